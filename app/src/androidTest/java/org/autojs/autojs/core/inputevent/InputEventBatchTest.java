@@ -0,0 +1,88 @@
+package org.autojs.autojs.core.inputevent;
+
+import static org.autojs.autojs.core.inputevent.InputEventCodes.ABS_MT_POSITION_X;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.ABS_MT_POSITION_Y;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.ABS_MT_TRACKING_ID;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.BTN_TOUCH;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.DOWN;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.EV_ABS;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.EV_KEY;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.EV_SYN;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.SYN_REPORT;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.UP;
+import static org.junit.Assert.assertArrayEquals;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.autojs.autojs.core.record.inputevent.InputEventToAutoFileRecorder;
+import org.autojs.autojs.pio.PFiles;
+import org.autojs.autojs.runtime.api.ScreenMetrics;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records of a batch of RootAutomator against those of the .auto recorder for the same touch,
+ * as both are replayed by the same executable.
+ */
+public class InputEventBatchTest {
+
+    private static final int DEVICE = 2;
+
+    /**
+     * A touch down, a move 16 ms later and a touch up 16 ms after that, as type, code, value and time in microseconds.
+     */
+    private static final long[][] EVENTS = {
+            {EV_ABS, ABS_MT_POSITION_X, 100, 0},
+            {EV_ABS, ABS_MT_POSITION_Y, 200, 0},
+            {EV_ABS, ABS_MT_TRACKING_ID, 1, 0},
+            {EV_KEY, BTN_TOUCH, DOWN, 0},
+            {EV_SYN, SYN_REPORT, 0, 0},
+            {EV_ABS, ABS_MT_POSITION_X, 150, 16000},
+            {EV_ABS, ABS_MT_POSITION_Y, 260, 16000},
+            {EV_SYN, SYN_REPORT, 0, 16000},
+            {EV_ABS, ABS_MT_TRACKING_ID, 0xffffffffL, 32000},
+            {EV_KEY, BTN_TOUCH, UP, 32000},
+            {EV_SYN, SYN_REPORT, 0, 32000},
+    };
+
+    @Test
+    public void testBatchMatchesRecorder() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        InputEventToAutoFileRecorder recorder = new InputEventToAutoFileRecorder(context);
+        recorder.start();
+        long startMicros = 74813468474L;
+        for (long[] e : EVENTS) {
+            recorder.onInputEvent(new InputEventObserver.InputEvent(startMicros + e[3], DEVICE, (int) e[0], (int) e[1], (int) e[2]));
+        }
+        recorder.stop();
+        File recorded = new File(recorder.getPath());
+        byte[] expected;
+        try {
+            expected = PFiles.readBytes(recorded.getPath());
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            recorded.delete();
+        }
+
+        InputEventBatch batch = new InputEventBatch(ScreenMetrics.getDeviceScreenWidth(), ScreenMetrics.getDeviceScreenHeight());
+        long lastMicros = 0;
+        for (long[] e : EVENTS) {
+            if (e[3] != lastMicros) {
+                batch.addSleep((e[3] - lastMicros) / 1000);
+                lastMicros = e[3];
+            }
+            batch.addEvent((int) e[0], (int) e[1], (int) e[2]);
+        }
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        batch.writeTo(actual);
+
+        assertArrayEquals(expected, actual.toByteArray());
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.autojs.autojs.core.inputevent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of parsing a <code>getevent -t</code> log of a multi-touch gesture, with the previous regex of string fields
+ * which listeners parsed again as hex, against the parser filling reused events,
+ * and throughput of events through the ring buffer to a dispatcher thread.
+ */
+public class InputEventParserBenchmarkTest {
+
+    private static final Pattern PATTERN = Pattern.compile("^\\[([^]]*)]\\s+([^:]*):\\s+([^\\s]*)\\s+([^\\s]*)\\s+([^\\s]*)\\s*$");
+    private static final Pattern LAST_INT_PATTERN = Pattern.compile("[^0-9]+([0-9]+)$");
+
+    /**
+     * One frame of two fingers moving, as captured from a touch screen.
+     */
+    private static final String[] FRAME = {
+            "/dev/input/event2: 0003 002f 00000000",
+            "/dev/input/event2: 0003 0035 %08x",
+            "/dev/input/event2: 0003 0036 %08x",
+            "/dev/input/event2: 0003 0030 00000006",
+            "/dev/input/event2: 0003 002f 00000001",
+            "/dev/input/event2: 0003 0035 %08x",
+            "/dev/input/event2: 0003 0036 %08x",
+            "/dev/input/event2: 0000 0000 00000000",
+    };
+
+    private static final int FRAMES = 25000;
+    private static final int ROUNDS = 3;
+
+    private final List<String> mLog = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mLog.add("add device 1: /dev/input/event2");
+        mLog.add("  name:     \"touchscreen\"");
+        long time = 74813468474L;
+        for (int i = 0; i < FRAMES; i++) {
+            int x = 200 + i % 600;
+            int y = 400 + i % 900;
+            int[] values = {x, y, 1080 - x, 1920 - y};
+            int v = 0;
+            for (String line : FRAME) {
+                String event = line.contains("%") ? String.format(Locale.ROOT, line, values[v++]) : line;
+                mLog.add(String.format(Locale.ROOT, "[%8d.%06d] %s", time / 1000000, time % 1000000, event));
+                time += 11;
+            }
+            time += 8000;
+        }
+    }
+
+    @Test
+    public void testParsersAgree() {
+        InputEventObserver.InputEvent event = new InputEventObserver.InputEvent();
+        for (String line : mLog) {
+            Matcher matcher = PATTERN.matcher(line);
+            if (!matcher.matches()) {
+                assertFalse(line, InputEventParser.parse(line, event));
+                continue;
+            }
+            assertTrue(line, InputEventParser.parse(line, event));
+            assertEquals(line, Math.round(Double.parseDouble(matcher.group(1)) * 1e6), event.timeMicros);
+            assertEquals(line, parseDeviceNumber(matcher.group(2)), event.deviceNumber);
+            assertEquals(line, (int) Long.parseLong(matcher.group(3), 16), event.eventType);
+            assertEquals(line, (int) Long.parseLong(matcher.group(4), 16), event.eventCode);
+            assertEquals(line, (int) Long.parseLong(matcher.group(5), 16), event.eventValue);
+            // Strings scripts read are the ones of the line.
+            assertEquals(line, matcher.group(2), event.getDevice());
+            assertEquals(line, matcher.group(3), event.getType());
+            assertEquals(line, matcher.group(4), event.getCode());
+            assertEquals(line, matcher.group(5), event.getValue());
+        }
+    }
+
+    @Test
+    public void testParse() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long checksum = 0;
+            for (String line : mLog) {
+                Matcher matcher = PATTERN.matcher(line);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                double time = Double.parseDouble(matcher.group(1));
+                String device = matcher.group(2);
+                String type = matcher.group(3);
+                String code = matcher.group(4);
+                String value = matcher.group(5);
+                checksum += (long) time + parseDeviceNumber(device) + Long.parseLong(type, 16) + Long.parseLong(code, 16) + Long.parseLong(value, 16);
+            }
+            report("regex and hex strings", System.nanoTime() - start, checksum);
+
+            start = System.nanoTime();
+            checksum = 0;
+            InputEventObserver.InputEvent event = new InputEventObserver.InputEvent();
+            for (String line : mLog) {
+                if (InputEventParser.parse(line, event)) {
+                    checksum += event.timeMicros / 1000000 + event.deviceNumber + event.eventType + event.eventCode + event.eventValue;
+                }
+            }
+            report("parser into reused event", System.nanoTime() - start, checksum);
+        }
+    }
+
+    @Test
+    public void testRingBuffer() throws InterruptedException {
+        InputEventRingBuffer buffer = new InputEventRingBuffer(1024);
+        long[] sum = new long[1];
+        Thread dispatcher = new Thread(() -> {
+            try {
+                while (true) {
+                    InputEventObserver.InputEvent event = buffer.take();
+                    sum[0] += event.eventValue;
+                    buffer.release();
+                }
+            } catch (InterruptedException ignored) {
+                // Done.
+            }
+        });
+        dispatcher.start();
+        long expected = 0;
+        long start = System.nanoTime();
+        for (String line : mLog) {
+            InputEventObserver.InputEvent event = buffer.claim();
+            if (InputEventParser.parse(line, event)) {
+                expected += event.eventValue;
+                buffer.publish();
+            }
+        }
+        while (buffer.size() > 0) {
+            Thread.yield();
+        }
+        report("parser through ring buffer", System.nanoTime() - start, expected);
+        dispatcher.interrupt();
+        dispatcher.join();
+        assertEquals(expected, sum[0]);
+    }
+
+    private static int parseDeviceNumber(String device) {
+        Matcher matcher = LAST_INT_PATTERN.matcher(device);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    private void report(String name, long nanos, long checksum) {
+        System.out.printf(Locale.ROOT, "%s: %.3f ms for %d lines, %.0f ns per line (checksum %d)%n",
+                name, nanos / 1e6, mLog.size(), (double) nanos / mLog.size(), checksum);
+    }
+
+}
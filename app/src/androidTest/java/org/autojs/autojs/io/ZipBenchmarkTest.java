@@ -0,0 +1,91 @@
+package org.autojs.autojs.io;
+
+import static org.junit.Assert.assertEquals;
+
+import org.autojs.autojs.pio.PFiles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Throughput of sequential (stream) and parallel (file) extraction on an archive of thousands of small files.
+ */
+public class ZipBenchmarkTest {
+
+    private static final int FILE_COUNT = 5000;
+    private static final int FILE_SIZE = 2 * 1024;
+
+    private File mRoot;
+    private File mArchive;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = new File(System.getProperty("java.io.tmpdir"), "zip-benchmark-" + System.nanoTime());
+        mRoot.mkdirs();
+        mArchive = new File(mRoot, "archive.zip");
+        Random random = new Random(0);
+        byte[] data = new byte[FILE_SIZE];
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(mArchive))) {
+            for (int i = 0; i < FILE_COUNT; i++) {
+                random.nextBytes(data);
+                zos.putNextEntry(new ZipEntry("dir" + i % 50 + "/file" + i + ".bin"));
+                zos.write(data);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PFiles.deleteRecursively(mRoot);
+    }
+
+    @Test
+    public void testThroughput() throws IOException {
+        File sequentialDir = new File(mRoot, "sequential");
+        long start = System.nanoTime();
+        Zip.unzip(new FileInputStream(mArchive), sequentialDir);
+        report("sequential", System.nanoTime() - start);
+
+        File parallelDir = new File(mRoot, "parallel");
+        start = System.nanoTime();
+        Zip.unzip(mArchive, parallelDir);
+        report("parallel", System.nanoTime() - start);
+
+        assertEquals(FILE_COUNT, countFiles(sequentialDir));
+        assertEquals(FILE_COUNT, countFiles(parallelDir));
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        File dir = new File(mRoot, "filtered");
+        Zip.unzip(mArchive, dir, entry -> entry.getName().startsWith("dir0/"));
+        assertEquals(FILE_COUNT / 50, countFiles(dir));
+    }
+
+    private static void report(String name, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s: %d files in %.0f ms, %.0f files/s, %.2f MB/s%n", name, FILE_COUNT, seconds * 1000,
+                FILE_COUNT / seconds, (double) FILE_COUNT * FILE_SIZE / 1024 / 1024 / seconds);
+    }
+
+    private static int countFiles(File dir) {
+        int count = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                count += file.isDirectory() ? countFiles(file) : 1;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.autojs.autojs.pluginclient;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames read from a stream which stays open after them, as a socket does between messages.
+ */
+public class FrameReaderTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private PipedOutputStream mOutput;
+    private FrameReader mReader;
+
+    @Before
+    public void setUp() throws IOException {
+        mOutput = new PipedOutputStream();
+        PipedInputStream input = new PipedInputStream(mOutput, 64 * 1024);
+        mReader = new FrameReader(input, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mExecutor.shutdownNow();
+        mOutput.close();
+    }
+
+    @Test
+    public void testJsonFrameThenBlockingRead() throws Exception {
+        String json = "{\"type\":\"hello\",\"data\":{\"name\":\"脚本\"}}";
+        writeFrame(json, JsonSocket.Type.JSON);
+        FrameReader.Frame frame = next();
+        assertEquals(JsonSocket.Type.JSON, frame.type);
+        assertEquals(json, frame.json);
+    }
+
+    @Test
+    public void testFramesInOneWrite() throws Exception {
+        writeFrame("{\"id\":1}", JsonSocket.Type.JSON);
+        writeFrame("{\"id\":2}", JsonSocket.Type.JSON);
+        assertEquals("{\"id\":1}", next().json);
+        assertEquals("{\"id\":2}", next().json);
+    }
+
+    private void writeFrame(String data, int type) throws IOException {
+        String header = String.format(Locale.ROOT, "%0" + (JsonSocket.HEADER_SIZE - 2) + "d%02d", data.length(), type);
+        mOutput.write(header.getBytes(UTF_8));
+        mOutput.write(data.getBytes(UTF_8));
+        mOutput.flush();
+    }
+
+    /**
+     * Read a frame without waiting for more bytes than it has, which would block until the timeout.
+     */
+    private FrameReader.Frame next() throws Exception {
+        Future<FrameReader.Frame> future = mExecutor.submit(mReader::next);
+        FrameReader.Frame frame = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        return frame;
+    }
+
+}
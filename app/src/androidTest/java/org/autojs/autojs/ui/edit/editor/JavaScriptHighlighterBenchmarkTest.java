@@ -0,0 +1,168 @@
+package org.autojs.autojs.ui.edit.editor;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import android.content.Context;
+import android.text.Editable;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.autojs.autojs.pio.PFiles;
+import org.autojs.autojs.rhino.TokenStream;
+import org.autojs.autojs.ui.edit.theme.Theme;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of highlighting a large document from scratch and after each keystroke,
+ * compared with lexing the whole document into a color per character.
+ * The sample is made of all JavaScript modules in assets, which is more than 15,000 lines.
+ */
+public class JavaScriptHighlighterBenchmarkTest {
+
+    private static final int VIEWPORT_LINES = 50;
+    private static final int KEYSTROKES = 500;
+
+    private Context mContext;
+    private Theme mTheme;
+    private String mSample;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mTheme = Theme.getDefault(mContext);
+        StringBuilder sample = new StringBuilder();
+        String[] modules = mContext.getAssets().list("modules");
+        if (modules != null) {
+            for (String module : modules) {
+                if (module.endsWith(".js")) {
+                    sample.append(PFiles.read(mContext.getAssets().open("modules/" + module))).append('\n');
+                }
+            }
+        }
+        mSample = sample.toString();
+    }
+
+    @Test
+    public void testFullDocument() {
+        runOnMainSync(() -> {
+            long start = System.nanoTime();
+            int[] colors = lexWholeDocument(mSample);
+            report("whole document, color per char", System.nanoTime() - start, colors.length);
+
+            CodeEditText editText = new CodeEditText(mContext);
+            JavaScriptHighlighter highlighter = new JavaScriptHighlighter(mTheme, editText);
+            editText.setText(mSample);
+            start = System.nanoTime();
+            highlighter.highlightUntilLine(VIEWPORT_LINES);
+            report("first viewport", System.nanoTime() - start, mSample.length());
+            start = System.nanoTime();
+            highlighter.highlightUntilLine(Integer.MAX_VALUE - 1);
+            report("all lines", System.nanoTime() - start, mSample.length());
+            highlighter.shutdown();
+        });
+    }
+
+    @Test
+    public void testTyping() {
+        runOnMainSync(() -> {
+            CodeEditText editText = new CodeEditText(mContext);
+            JavaScriptHighlighter highlighter = new JavaScriptHighlighter(mTheme, editText);
+            editText.setText(mSample);
+            highlighter.highlightUntilLine(Integer.MAX_VALUE - 1);
+            Editable text = editText.getText();
+            int position = mSample.indexOf('\n', mSample.length() / 2) + 1;
+            int line = countLines(mSample, position);
+            long start = System.nanoTime();
+            for (int i = 0; i < KEYSTROKES; i++) {
+                text.insert(position + i, "a");
+                highlighter.highlightUntilLine(line + VIEWPORT_LINES);
+            }
+            report("keystroke, incremental", (System.nanoTime() - start) / KEYSTROKES, text.length());
+
+            start = System.nanoTime();
+            for (int i = 0; i < KEYSTROKES / 50; i++) {
+                lexWholeDocument(text.toString());
+            }
+            report("keystroke, whole document", (System.nanoTime() - start) / (KEYSTROKES / 50), text.length());
+            highlighter.shutdown();
+        });
+    }
+
+    @Test
+    public void testIncrementalMatchesFromScratch() {
+        List<int[]> actual = new ArrayList<>();
+        List<int[]> expected = new ArrayList<>();
+        runOnMainSync(() -> {
+            CodeEditText editText = new CodeEditText(mContext);
+            JavaScriptHighlighter highlighter = new JavaScriptHighlighter(mTheme, editText);
+            editText.setText(mSample);
+            highlighter.highlightUntilLine(Integer.MAX_VALUE - 1);
+            Editable text = editText.getText();
+            int middle = mSample.length() / 2;
+            // Open a comment and a continued string, which change the state of all following lines, then close them.
+            text.insert(middle, "/* ");
+            highlighter.highlightUntilLine(countLines(text, middle) + VIEWPORT_LINES);
+            text.insert(middle / 2, "'\\\n");
+            text.insert(middle + 1000, "*/\n");
+            text.delete(middle / 2, middle / 2 + 3);
+            highlighter.highlightUntilLine(Integer.MAX_VALUE - 1);
+
+            CodeEditText fromScratchEditText = new CodeEditText(mContext);
+            JavaScriptHighlighter fromScratch = new JavaScriptHighlighter(mTheme, fromScratchEditText);
+            fromScratchEditText.setText(text.toString());
+            fromScratch.highlightUntilLine(Integer.MAX_VALUE - 1);
+            int lines = countLines(text, text.length()) + 1;
+            for (int i = 0; i < lines; i++) {
+                actual.add(highlighter.getLineSpans(i));
+                expected.add(fromScratch.getLineSpans(i));
+            }
+            highlighter.shutdown();
+            fromScratch.shutdown();
+        });
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("line " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private int[] lexWholeDocument(String text) {
+        int[] colors = new int[text.length()];
+        TokenStream ts = new TokenStream(null, text, 0);
+        int token;
+        try {
+            while ((token = ts.getToken()) != Token.EOF) {
+                int color = mTheme.getColorForToken(token);
+                for (int i = ts.getTokenBeg(); i < ts.getTokenEnd(); i++) {
+                    colors[i] = color;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return colors;
+    }
+
+    private static int countLines(CharSequence text, int end) {
+        int count = 0;
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private static void report(String name, long nanos, int chars) {
+        System.out.printf("%s: %.3f ms for %d chars%n", name, nanos / 1e6, chars);
+    }
+
+}
@@ -344,32 +344,103 @@ Object.assign(this, {
         define(property, descriptorValue) {
             Object.defineProperty(global, property, { value: descriptorValue, enumerable: true });
         },
+        /**
+         * Modules which have no side effects on global scope while loading,
+         * and therefore may be bound lazily without changing behaviors of scripts.
+         */
+        lazyModules: new Set([
+            'crypto', 'tasks', 'engines', 'http', 'RootAutomator', 'plugins', 'Arrayx', 'Mathx',
+            'ocr', 'barcode', 'qrcode', 'floaty', 'storages', 'recorder', 'toast',
+            'media', 'sensors', 'base64', 'notice', 'shizuku',
+        ]),
+        isLazyBinding: Pref.isLazyGlobalModulesEnabled(),
+        loadedModules: [],
         bind(modules) {
             modules.forEach((module) => {
                 if (Array.isArray(module)) {
                     this.bind(module);
                 } else if (module in this.moduleSpecials) {
                     this.moduleSpecials[module].call();
+                } else if (this.isLazyBinding && this.lazyModules.has(module)) {
+                    this.bindLazily(module);
                 } else {
-                    // Object.defineProperty(global, module, { value: require(`__${module}__`)(runtime, global), enumerable: true });
-                    global[`$${module}`] = global[module] = require(`__${module}__`)(runtime, global);
-                    try {
-                        if (typeof global[module] === 'object') {
-                            if (!(Object.hasOwn(global[module], 'toString'))) {
-                                // noinspection JSPotentiallyInvalidConstructorUsage
-                                let prototype = global[module].constructor.prototype;
-                                if (prototype !== undefined) /* For AutoJs6 debugger. */ {
-                                    if (typeof prototype.toString !== 'function') {
-                                        global[`$${module}`].toString = global[module].toString = () => module;
-                                    }
-                                }
+                    this.load(module);
+                }
+            });
+        },
+        /**
+         * Define getters of global[module] and global['$' + module],
+         * which load the module on first access and then replace themselves with the module.
+         */
+        bindLazily(module) {
+            const lock = new ReentrantLock();
+            const keys = [ module, `$${module}` ];
+            const get = () => {
+                lock.lock();
+                try {
+                    if (lock.getHoldCount() > 1) {
+                        // Accessed by the module itself while loading, same as eager binding.
+                        return undefined;
+                    }
+                    let descriptor = Object.getOwnPropertyDescriptor(global, module);
+                    if (descriptor !== undefined && 'value' in descriptor) {
+                        // Loaded by another thread while waiting for the lock.
+                        return descriptor.value;
+                    }
+                    return this.load(module, true);
+                } finally {
+                    lock.unlock();
+                }
+            };
+            keys.forEach((key) => {
+                Object.defineProperty(global, key, {
+                    get: get,
+                    set(value) {
+                        Object.defineProperty(global, key, { value, writable: true, enumerable: true, configurable: true });
+                    },
+                    enumerable: true,
+                    configurable: true,
+                });
+            });
+        },
+        load(module, isLazy) {
+            let start = Date.now();
+            let value = require(`__${module}__`)(runtime, global);
+            [ module, `$${module}` ].forEach((key) => {
+                Object.defineProperty(global, key, { value, writable: true, enumerable: true, configurable: true });
+            });
+            try {
+                if (typeof global[module] === 'object') {
+                    if (!(Object.hasOwn(global[module], 'toString'))) {
+                        // noinspection JSPotentiallyInvalidConstructorUsage
+                        let prototype = global[module].constructor.prototype;
+                        if (prototype !== undefined) /* For AutoJs6 debugger. */ {
+                            if (typeof prototype.toString !== 'function') {
+                                global[`$${module}`].toString = global[module].toString = () => module;
                             }
                         }
-                    } catch (e) {
-                        // Ignored.
                     }
                 }
-            });
+            } catch (e) {
+                // Ignored.
+            }
+            let time = Date.now() - start;
+            this.loadedModules.push({ module, time, lazy: Boolean(isLazy) });
+            if (isLazy) {
+                Log.d('init', `lazily loaded module ${module} in ${time} ms`);
+            }
+            return value;
+        },
+        traceLoadedModules() {
+            let total = this.loadedModules.reduce((sum, o) => sum + o.time, 0);
+            let names = this.loadedModules.map(o => `${o.module}(${o.time})`).join(', ');
+            let deferred = this.isLazyBinding
+                ? Array.from(this.lazyModules).filter(m => !this.loadedModules.some(o => o.module === m))
+                : [];
+            Log.d('init', `loaded ${this.loadedModules.length} modules in ${total} ms: ${names}`);
+            if (deferred.length > 0) {
+                Log.d('init', `deferred ${deferred.length} modules: ${deferred.join(', ')}`);
+            }
         },
         getProxyObjectInstance(getter, setter) {
             return new ProxyObject(global, Object.assign(
@@ -579,6 +650,8 @@ Object.assign(this, {
             if (Pref.isExtendingJsBuildInObjectsEnabled()) {
                 plugins.extendAll();
             }
+
+            _.traceLoadedModules();
         },
     };
 
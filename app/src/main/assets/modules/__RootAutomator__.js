@@ -32,6 +32,7 @@ module.exports = function (scriptRuntime, scope) {
                 'tap', 'swipe', 'press', 'longPress',
                 'touchDown', 'touchUp', 'touchMove',
                 'getDefaultId', 'setDefaultId', 'exit',
+                'beginBatch', 'endBatch', 'isInBatch',
             ].forEach(key => this[key] = this.__ra__[key].bind(this.__ra__));
         },
     };
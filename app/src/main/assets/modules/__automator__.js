@@ -289,6 +289,7 @@ module.exports = function (scriptRuntime, scope) {
             findOnUiThread: AccessibilityBridge.FLAG_FIND_ON_UI_THREAD,
             useUsageStats: AccessibilityBridge.FLAG_USE_USAGE_STATS,
             useShell: AccessibilityBridge.FLAG_USE_SHELL,
+            useSnapshot: AccessibilityBridge.FLAG_USE_SNAPSHOT,
         },
         /**
          * @template {boolean} T
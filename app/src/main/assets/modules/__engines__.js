@@ -44,6 +44,30 @@ module.exports = function (scriptRuntime, scope) {
                 execAutoFile(path, config) {
                     return rtEngines.execAutoFile(path, _.fillConfig(config));
                 },
+                getScriptCacheStats() {
+                    let cache = rtEngines.getScriptCache();
+                    return {
+                        hits: Number(cache.getHits()),
+                        misses: Number(cache.getMisses()),
+                        count: Number(cache.getCount()),
+                        size: Number(cache.getSize()),
+                        maxSize: Number(cache.getMaxSourceLength()),
+                    };
+                },
+                clearScriptCache() {
+                    rtEngines.getScriptCache().clear();
+                },
+                getEnginePoolStats() {
+                    let pool = rtEngines.getEnginePool();
+                    return {
+                        hits: Number(pool.getHits()),
+                        misses: Number(pool.getMisses()),
+                        idle: Number(pool.getIdleCount()),
+                        maxSize: Number(pool.getMaxSize()),
+                        averagePooledTimeToFirstLine: Number(pool.getAveragePooledTimeToFirstLine()),
+                        averageColdTimeToFirstLine: Number(pool.getAverageColdTimeToFirstLine()),
+                    };
+                },
             };
 
             return Engines;
@@ -23,6 +23,52 @@ module.exports = function (scriptRuntime, scope) {
                 toFile(path) {
                     return new java.io.File(this.path(path));
                 },
+                /**
+                 * Map a file for random reads, which keeps the file open until close() is called,
+                 * so call close() when done; files left open are closed when the script exits.
+                 */
+                map(path) {
+                    return scriptRuntime.files.map(path);
+                },
+                /**
+                 * Iterable lines of a text file, read with a buffer of the given size (8192 by default).
+                 * The file is closed when all the lines are read, by forEach(), or by close().
+                 * A for-of loop which breaks early does not close it (Rhino does not call return()),
+                 * so call close() after such a loop; files left open are closed when the script exits.
+                 */
+                lines(path, encoding, bufferSize) {
+                    let rtLines = scriptRuntime.files.lines.apply(scriptRuntime.files, arguments);
+                    let lines = {
+                        next() {
+                            return rtLines.hasNext()
+                                ? { value: String(rtLines.next()), done: false }
+                                : { value: undefined, done: true };
+                        },
+                        return() {
+                            rtLines.close();
+                            return { value: undefined, done: true };
+                        },
+                        forEach(callback) {
+                            try {
+                                while (rtLines.hasNext()) {
+                                    callback(String(rtLines.next()), rtLines.getLineNumber());
+                                }
+                            } finally {
+                                rtLines.close();
+                            }
+                        },
+                        getLineNumber() {
+                            return rtLines.getLineNumber();
+                        },
+                        close() {
+                            rtLines.close();
+                        },
+                    };
+                    lines[Symbol.iterator] = function () {
+                        return this;
+                    };
+                    return lines;
+                },
             };
 
             Object.setPrototypeOf(Files.prototype, scriptRuntime.files);
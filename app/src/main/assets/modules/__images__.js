@@ -49,6 +49,27 @@ module.exports = function (scriptRuntime, scope) {
                         ? rtImages.captureScreen()
                         : rtImages.captureScreen(path);
                 },
+                setMatCapture(enabled) {
+                    rtImages.setMatCapture(Boolean(enabled));
+                },
+                isMatCapture() {
+                    return rtImages.isMatCapture();
+                },
+                getBufferPoolStats() {
+                    let pool = rtImages.bufferPool;
+                    return {
+                        hits: Number(pool.getHits()),
+                        misses: Number(pool.getMisses()),
+                        retainedBytes: Number(pool.getRetainedBytes()),
+                        maxRetainedBytes: Number(pool.getMaxRetainedBytes()),
+                    };
+                },
+                setBufferPoolMaxBytes(bytes) {
+                    rtImages.bufferPool.setMaxRetainedBytes(_.parseNumber(bytes));
+                },
+                clearBufferPool() {
+                    rtImages.bufferPool.clear();
+                },
                 read(path) {
                     return rtImages.read(path);
                 },
@@ -359,7 +380,7 @@ module.exports = function (scriptRuntime, scope) {
                     let rect = 'region' in opt ? _.buildRegion(img, opt.region) : null;
                     if (opt.all) {
                         return Array.from(rtImages.colorFinder.findPointsByColors(
-                            img, niceFirstColor, niceThreshold, rect, list,
+                            img, niceFirstColor, niceThreshold, rect, list, _.parseNumber(opt.limit, 0),
                         ));
                     } else {
                         return rtImages.colorFinder.findPointByColors(
@@ -422,6 +443,28 @@ module.exports = function (scriptRuntime, scope) {
                         _.parseNumber(opt.max, 5));
                     return new _.MatchingResult(list);
                 },
+                matchTemplates(img, templates, options) {
+                    _.initIfNeeded();
+                    let opt = options || {};
+                    let list = java.lang.reflect.Array.newInstance(org.autojs.autojs.core.image.ImageWrapper, templates.length);
+                    templates.forEach((template, i) => list[i] = template);
+                    let results = rtImages.matchTemplates(img, list,
+                        _.parseWeakThreshold(opt, 0.6),
+                        _.parseThreshold(opt, 0.9),
+                        'region' in opt ? _.buildRegion(img, opt.region) : null,
+                        _.parseNumber(opt.level, -1),
+                        _.parseNumber(opt.max, 5));
+                    return scriptRuntime.bridges.toArray(results).map(result => ({
+                        index: result.index,
+                        time: Number(result.time),
+                        result: new _.MatchingResult(result.matches),
+                    }));
+                },
+                prepareTemplate(template, options) {
+                    _.initIfNeeded();
+                    let opt = options || {};
+                    return rtImages.prepareTemplate(template, _.parseNumber(opt.level, -1));
+                },
                 fromBase64(base64) {
                     return rtImages.fromBase64(base64);
                 },
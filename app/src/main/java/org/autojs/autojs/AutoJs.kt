@@ -164,6 +164,7 @@ open class AutoJs(appContext: Application) : AbstractAutoJs(appContext) {
                     else -> AutoJs(application)
                 }
                 isInitialized = true
+                instance.scriptEngineService.enginePool.refill()
             }
         }
     }
@@ -24,17 +24,26 @@ import java.util.concurrent.Callable
  * Created by Stardust on 2017/10/24.
  * Modified by SuperMonster003 as of Jul 8, 2022.
  */
-open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: File, private val mWorkspacePath: String) {
+open class ApkBuilder private constructor(private val mApkPackager: ApkPackager, private val mOutApkFile: File, private val mWorkspacePath: String) {
+
+    constructor(apkInputStream: InputStream?, outApkFile: File, workspacePath: String) : this(ApkPackager(apkInputStream, workspacePath), outApkFile, workspacePath)
+
+    constructor(apkFile: File, outApkFile: File, workspacePath: String) : this(ApkPackager(apkFile, workspacePath), outApkFile, workspacePath)
 
     private var mProgressCallback: ProgressCallback? = null
-    private val mApkPackager = ApkPackager(apkInputStream, mWorkspacePath)
     private var mArscPackageName: String? = null
     private var mManifestEditor: ManifestEditor? = null
     private var mInitVector: String? = null
     private var mKey: String? = null
+    private var mScriptPath: String? = null
 
     private val mAssetManager: AssetManager by lazy { GlobalAppContext.get().assets }
 
+    // Assets do not change until the app is updated.
+    private val mAssetsLastModified: Long by lazy {
+        GlobalAppContext.get().let { it.packageManager.getPackageInfo(it.packageName, 0).lastUpdateTime }
+    }
+
     private val mManifestFile
         get() = File(mWorkspacePath, "AndroidManifest.xml")
 
@@ -73,7 +82,7 @@ open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: Fil
             subDirs.forEach {subDir->
                 when(subDir.name.lowercase()==key){
                     true -> {
-                        File(srcLibDir, subDir.name).copyRecursively(File(mWorkspacePath,"lib/$value"),false)
+                        copyPreservingTime(File(srcLibDir, subDir.name), File(mWorkspacePath,"lib/$value"))
                     }
                     else -> {}
                 }
@@ -81,8 +90,17 @@ open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: Fil
         }
     }
 
+    // Modification times are kept, so that TinySign reuses digests and compressed data of unchanged files.
+    private fun copyPreservingTime(fromDir: File, toDir: File) {
+        fromDir.copyRecursively(toDir, false)
+        fromDir.walkTopDown().filter { it.isFile }.forEach {
+            File(toDir, it.relativeTo(fromDir).path).setLastModified(it.lastModified())
+        }
+    }
+
     @Throws(IOException::class)
     fun setScriptFile(path: String?) = also {
+        mScriptPath = path
         path?.let {
             when {
                 PFiles.isDir(it) -> copyDir("assets/project/", it)
@@ -100,7 +118,10 @@ open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: Fil
                 if (child.name.endsWith(".js")) {
                     encrypt(toDir, child)
                 } else {
-                    StreamUtils.write(FileInputStream(child), FileOutputStream(File(toDir, child.name)))
+                    File(toDir, child.name).let { target ->
+                        StreamUtils.write(FileInputStream(child), FileOutputStream(target))
+                        target.setLastModified(child.lastModified())
+                    }
                 }
             } else {
                 if (!mAppConfig.ignoredDirs.contains(child)) {
@@ -218,6 +239,7 @@ open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: Fil
                         output.flush()
                     }
                 }
+                targetFile.setLastModified(mAssetsLastModified)
             }
         } else /* asset is folder */ {
             targetFile.delete()
@@ -233,7 +255,7 @@ open class ApkBuilder(apkInputStream: InputStream?, private val mOutApkFile: Fil
     fun sign() = also {
         mProgressCallback?.let { callback -> GlobalAppContext.post { callback.onSign(this) } }
         val fos = FileOutputStream(mOutApkFile)
-        TinySign.sign(File(mWorkspacePath), fos)
+        TinySign.sign(File(mWorkspacePath), "${mApkPackager.templateIdentity}|$mScriptPath", fos)
         fos.close()
     }
 
@@ -2,17 +2,17 @@ package org.autojs.autojs.apkbuilder;
 
 import android.text.TextUtils;
 
-import org.autojs.autojs.apkbuilder.util.StreamUtils;
+import org.autojs.autojs.io.Zip;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+import okio.ByteString;
 import pxb.android.tinysign.TinySign;
 
 /**
@@ -21,32 +21,43 @@ import pxb.android.tinysign.TinySign;
 public class ApkPackager {
 
     private InputStream mApkInputStream;
+    private File mApkFile;
     private String mWorkspacePath;
+    private String mTemplateIdentity;
 
     public ApkPackager(InputStream apkInputStream, String workspacePath) {
         mApkInputStream = apkInputStream;
         mWorkspacePath = workspacePath;
     }
 
-    public ApkPackager(String apkPath, String workspacePath) throws FileNotFoundException {
-        mApkInputStream = new FileInputStream(apkPath);
+    public ApkPackager(String apkPath, String workspacePath) {
+        this(new File(apkPath), workspacePath);
+    }
+
+    public ApkPackager(File apkFile, String workspacePath) {
+        mApkFile = apkFile;
         mWorkspacePath = workspacePath;
     }
 
     public void unzip() throws IOException {
-        ZipInputStream zis = new ZipInputStream(mApkInputStream);
-        for (ZipEntry e = zis.getNextEntry(); e != null; e = zis.getNextEntry()) {
-            String name = e.getName();
-            if (!e.isDirectory() && !TextUtils.isEmpty(name)) {
-                File file = new File(mWorkspacePath, name);
-                System.out.println(file);
-                file.getParentFile().mkdirs();
-                FileOutputStream fos = new FileOutputStream(file);
-                StreamUtils.write(zis, fos);
-                fos.close();
-            }
+        // A template from file is extracted in parallel, a template from stream (e.g. assets) sequentially.
+        Zip.EntryFilter filter = e -> !e.isDirectory() && !TextUtils.isEmpty(e.getName());
+        if (mApkFile != null) {
+            Zip.unzip(mApkFile, new File(mWorkspacePath), filter);
+            mTemplateIdentity = mApkFile.getAbsolutePath() + ":" + mApkFile.length() + ":" + mApkFile.lastModified();
+        } else {
+            // A stream (e.g. from a plugin) has no identity of its own, so its content is hashed while extracted.
+            DigestInputStream stream = new DigestInputStream(mApkInputStream, newSha1Digest());
+            Zip.unzip(stream, new File(mWorkspacePath), filter);
+            mTemplateIdentity = ByteString.of(stream.getMessageDigest().digest()).hex();
         }
-        zis.close();
+    }
+
+    /**
+     * Identity of the template extracted by {@link #unzip()}, which differs for templates of different content.
+     */
+    public String getTemplateIdentity() {
+        return mTemplateIdentity;
     }
 
     public void repackage(String newApkPath) throws Exception {
@@ -59,4 +70,12 @@ public class ApkPackager {
 
     }
 
+    private static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
@@ -0,0 +1,191 @@
+package org.autojs.autojs.apkbuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal zip writer taking entry data as it should be stored, which is either the content itself (STORED)
+ * or raw deflate data compressed beforehand (DEFLATED), so that entries can be compressed in parallel
+ * and reused from cache, which {@link java.util.zip.ZipOutputStream} does not allow.
+ * <p>
+ * Zip64 is not supported, as APK files built from templates are far below its limits.
+ * </p>
+ */
+class RawZipWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    private static class CentralEntry {
+
+        final byte[] name;
+        final int method;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        CentralEntry(byte[] name, int method, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+    }
+
+    private final OutputStream mOut;
+    private final List<CentralEntry> mEntries = new ArrayList<>();
+    private final byte[] mBuffer = new byte[64 * 1024];
+    private final int mDosTime = toDosTime(System.currentTimeMillis());
+    private long mOffset = 0;
+
+    RawZipWriter(OutputStream out) {
+        mOut = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    void writeDirectory(String name) throws IOException {
+        writeEntry(name, ZipEntry.STORED, 0, 0, 0, null);
+    }
+
+    /**
+     * Write an entry with data from the file, which is raw deflate data for a DEFLATED entry.
+     */
+    void writeEntry(String name, int method, long crc, long size, File data) throws IOException {
+        try (InputStream is = new FileInputStream(data)) {
+            writeEntry(name, method, crc, data.length(), size, is);
+        }
+    }
+
+    /**
+     * Deflate the content and write it as an entry, for small entries like signature files.
+     */
+    void writeDeflated(String name, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater)) {
+            dos.write(content);
+        } finally {
+            deflater.end();
+        }
+        byte[] data = compressed.toByteArray();
+        writeEntry(name, ZipEntry.DEFLATED, crc.getValue(), data.length, content.length, new ByteArrayInputStream(data));
+    }
+
+    private void writeEntry(String name, int method, long crc, long compressedSize, long size, InputStream data) throws IOException {
+        if (mEntries.size() >= MAX_ENTRIES || mOffset > MAX_OFFSET || compressedSize > MAX_OFFSET || size > MAX_OFFSET) {
+            throw new IOException("Zip64 is not supported: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        mEntries.add(new CentralEntry(nameBytes, method, crc, compressedSize, size, mOffset));
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(VERSION);
+        writeShort(FLAG_UTF8);
+        writeShort(method);
+        writeInt(mDosTime);
+        writeInt((int) crc);
+        writeInt((int) compressedSize);
+        writeInt((int) size);
+        writeShort(nameBytes.length);
+        writeShort(0);
+        write(nameBytes, nameBytes.length);
+        if (data != null) {
+            long copied = 0;
+            int n;
+            while ((n = data.read(mBuffer)) > 0) {
+                write(mBuffer, n);
+                copied += n;
+            }
+            if (copied != compressedSize) {
+                throw new IOException("Size of " + name + " changed while writing");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long centralOffset = mOffset;
+        for (CentralEntry entry : mEntries) {
+            writeInt(CENTRAL_HEADER_SIGNATURE);
+            writeShort(VERSION);
+            writeShort(VERSION);
+            writeShort(FLAG_UTF8);
+            writeShort(entry.method);
+            writeInt(mDosTime);
+            writeInt((int) entry.crc);
+            writeInt((int) entry.compressedSize);
+            writeInt((int) entry.size);
+            writeShort(entry.name.length);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt((int) entry.offset);
+            write(entry.name, entry.name.length);
+        }
+        long centralSize = mOffset - centralOffset;
+        writeInt(END_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(mEntries.size());
+        writeShort(mEntries.size());
+        writeInt((int) centralSize);
+        writeInt((int) centralOffset);
+        writeShort(0);
+        mOut.close();
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        mOut.write(bytes, 0, length);
+        mOffset += length;
+    }
+
+    private void writeShort(int value) throws IOException {
+        mOut.write(value & 0xFF);
+        mOut.write((value >>> 8) & 0xFF);
+        mOffset += 2;
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeShort(value & 0xFFFF);
+        writeShort((value >>> 16) & 0xFFFF);
+    }
+
+    private static int toDosTime(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(millis);
+        int year = Math.max(c.get(Calendar.YEAR), 1980);
+        return (year - 1980) << 25
+                | (c.get(Calendar.MONTH) + 1) << 21
+                | c.get(Calendar.DAY_OF_MONTH) << 16
+                | c.get(Calendar.HOUR_OF_DAY) << 11
+                | c.get(Calendar.MINUTE) << 5
+                | c.get(Calendar.SECOND) >> 1;
+    }
+
+}
@@ -0,0 +1,175 @@
+package org.autojs.autojs.apkbuilder;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.autojs.autojs.app.GlobalAppContext;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import okio.ByteString;
+
+/**
+ * Digests and compressed data of workspace files, kept between builds by {@link TinySign}.
+ * <p>
+ * Digests (SHA-1 and CRC-32) are kept in memory, keyed by the source of the workspace and entry name,
+ * and checked against size and modification time, so unchanged files are not read at all
+ * when their compressed data is cached too. The source is part of the key as workspace files keep
+ * the modification times of the template and project they come from, and templates share fixed entry times.
+ * Compressed data (raw deflate) is kept on disk, keyed by SHA-1 of the content,
+ * so the same content is compressed once whatever workspace it comes from.
+ * </p>
+ */
+class SignCache {
+
+    private static final long MAX_CACHE_SIZE = 128L * 1024 * 1024;
+
+    static class Digest {
+
+        final long length;
+        final long lastModified;
+        final byte[] sha1;
+        final long crc;
+
+        Digest(long length, long lastModified, byte[] sha1, long crc) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+            this.crc = crc;
+        }
+
+    }
+
+    private static final ConcurrentHashMap<String, Digest> sDigests = new ConcurrentHashMap<>();
+
+    private static final Object sDiskLock = new Object();
+
+    private static File getCacheDir() {
+        File dir = new File(GlobalAppContext.get().getCacheDir(), "apk-sign");
+        // noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Digest of the file, read from the file only if it changed since the last build from the same source.
+     * When compression is required, the compressed data is generated in the same pass.
+     *
+     * @param source identity of the template and project the workspace was made of
+     */
+    @NonNull
+    static Digest digest(String source, String name, File file, boolean compress) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String key = source + "!/" + name;
+        Digest digest = sDigests.get(key);
+        if (digest != null && digest.length == length && digest.lastModified == lastModified) {
+            if (!compress || getDeflatedFile(digest).exists()) {
+                return digest;
+            }
+        }
+        digest = read(file, length, lastModified, compress);
+        sDigests.put(key, digest);
+        return digest;
+    }
+
+    /**
+     * Raw deflate data of the content with the digest, which is generated by {@link #digest(String, String, File, boolean)}.
+     */
+    @NonNull
+    static File getDeflatedFile(Digest digest) {
+        return new File(getCacheDir(), ByteString.of(digest.sha1).hex() + ".z");
+    }
+
+    static void touch(File file) {
+        // noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    static void trim() {
+        synchronized (sDiskLock) {
+            File[] files = getCacheDir().listFiles((dir, name) -> name.endsWith(".z"));
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            long total = 0;
+            for (File file : files) {
+                total += file.length();
+            }
+            for (File file : files) {
+                if (total <= MAX_CACHE_SIZE) {
+                    break;
+                }
+                total -= file.length();
+                // noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static Digest read(File file, long length, long lastModified, boolean compress) throws IOException {
+        MessageDigest sha1 = newSha1Digest();
+        CRC32 crc = new CRC32();
+        File temp = compress ? File.createTempFile("deflate-", ".tmp", getCacheDir()) : null;
+        Deflater deflater = compress ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : null;
+        try (InputStream is = new FileInputStream(file);
+             OutputStream os = compress ? new DeflaterOutputStream(new FileOutputStream(temp), deflater, 64 * 1024) : null) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                sha1.update(buffer, 0, n);
+                crc.update(buffer, 0, n);
+                if (os != null) {
+                    os.write(buffer, 0, n);
+                }
+            }
+        } catch (IOException e) {
+            delete(temp);
+            throw e;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        Digest digest = new Digest(length, lastModified, sha1.digest(), crc.getValue());
+        if (temp != null) {
+            File deflated = getDeflatedFile(digest);
+            synchronized (sDiskLock) {
+                if (deflated.exists() || !temp.renameTo(deflated)) {
+                    delete(temp);
+                }
+            }
+        }
+        return digest;
+    }
+
+    private static void delete(@Nullable File file) {
+        if (file != null) {
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -2,12 +2,11 @@ package org.autojs.autojs.apkbuilder;
 
 import android.util.Base64;
 
-import org.autojs.autojs.apkbuilder.util.StreamUtils;
-
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
@@ -20,49 +19,44 @@ import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class TinySign {
-    public TinySign() {
-    }
 
-    private static byte[] dBase64(String data) {
-        return Base64.decode(data.getBytes(StandardCharsets.UTF_8), Base64.NO_WRAP);
-    }
+    // Formats which are compressed already, or which Android reads better uncompressed (native libraries).
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            ".so", ".png", ".jpg", ".jpeg", ".gif", ".webp", ".mp3", ".ogg", ".mp4", ".zip", ".jar", ".apk", ".gz"
+    ));
 
-    private static void doDir(String prefix, File dir, ZipOutputStream zos, DigestOutputStream dos, Manifest m) throws IOException {
-        zos.putNextEntry(new ZipEntry(prefix));
-        zos.closeEntry();
-        File[] files = dir.listFiles();
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
 
-        if (files != null) {
-            for (File f : files) {
-                if (f.isFile()) {
-                    doFile(prefix + f.getName(), f, zos, dos, m);
-                } else {
-                    doDir(prefix + f.getName() + "/", f, zos, dos, m);
-                }
-            }
-        }
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+        Thread thread = new Thread(r, "TinySign-" + sThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
 
+    public TinySign() {
     }
 
-    private static void doFile(String name, File f, ZipOutputStream zos, DigestOutputStream dos, Manifest m) throws IOException {
-        zos.putNextEntry(new ZipEntry(name));
-        FileInputStream fis = new FileInputStream(f);
-        StreamUtils.write(fis, dos);
-        fis.close();
-        byte[] digest = dos.getMessageDigest().digest();
-        zos.closeEntry();
-        Attributes attr = new Attributes();
-        attr.putValue("SHA1-Digest", eBase64(digest));
-        m.getEntries().put(name, attr);
+    private static byte[] dBase64(String data) {
+        return Base64.decode(data.getBytes(StandardCharsets.UTF_8), Base64.NO_WRAP);
     }
 
     private static String eBase64(byte[] data) {
@@ -112,42 +106,128 @@ public class TinySign {
         return signature;
     }
 
-    public static void sign(File dir, OutputStream out) throws Exception {
-        ZipOutputStream zos = new ZipOutputStream(out);
-        zos.putNextEntry(new ZipEntry("META-INF/"));
-        zos.closeEntry();
+    /**
+     * Zip and sign the workspace directory.
+     * <p>
+     * Files are digested (and compressed) in parallel, and both are reused from {@link SignCache}
+     * for files unchanged since the last build from the same source. Entries with already compressed content are stored as is.
+     * </p>
+     *
+     * @param source identity of the template and project the workspace was made of
+     */
+    public static void sign(File dir, String source, OutputStream out) throws Exception {
+        List<String> names = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        collect("", dir, names, files);
+
+        List<Future<SignCache.Digest>> digests = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            String name = names.get(i);
+            File file = files.get(i);
+            digests.add(file == null ? null : sExecutor.submit(() -> SignCache.digest(source, name, file, !isStored(name))));
+        }
+
         Manifest manifest = new Manifest();
-        String sha1Manifest = writeMF(dir, manifest, zos);
-        Manifest sf = generateSF(manifest);
-        byte[] sign = writeSF(zos, sf, sha1Manifest);
-        writeRSA(zos, sign);
-        zos.close();
+        try (RawZipWriter zip = new RawZipWriter(out)) {
+            zip.writeDirectory("META-INF/");
+            for (int i = 0; i < files.size(); i++) {
+                String name = names.get(i);
+                File file = files.get(i);
+                if (file == null) {
+                    zip.writeDirectory(name);
+                    continue;
+                }
+                SignCache.Digest digest = getDigest(digests.get(i));
+                if (isStored(name)) {
+                    zip.writeEntry(name, ZipEntry.STORED, digest.crc, digest.length, file);
+                } else {
+                    File deflated = SignCache.getDeflatedFile(digest);
+                    SignCache.touch(deflated);
+                    zip.writeEntry(name, ZipEntry.DEFLATED, digest.crc, digest.length, deflated);
+                }
+                Attributes attr = new Attributes();
+                attr.putValue("SHA1-Digest", eBase64(digest.sha1));
+                manifest.getEntries().put(name, attr);
+            }
+            String sha1Manifest = writeMF(manifest, zip);
+            Manifest sf = generateSF(manifest);
+            byte[] sign = writeSF(zip, sf, sha1Manifest);
+            writeRSA(zip, sign);
+        } finally {
+            for (Future<SignCache.Digest> digest : digests) {
+                if (digest != null) {
+                    digest.cancel(false);
+                }
+            }
+        }
+        SignCache.trim();
     }
 
-    private static String writeMF(File dir, Manifest manifest, ZipOutputStream zos) throws NoSuchAlgorithmException, IOException {
-        MessageDigest md = MessageDigest.getInstance("SHA1");
-        DigestOutputStream dos = new DigestOutputStream(zos, md);
-        zipAndSha1(dir, zos, dos, manifest);
+    /**
+     * Collect entries in the order of the previous implementation, where a null file stands for a directory.
+     */
+    private static void collect(String prefix, File dir, List<String> names, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (prefix.isEmpty() && f.getName().startsWith("META-INF")) {
+                continue;
+            }
+            if (f.isFile()) {
+                names.add(prefix + f.getName());
+                files.add(f);
+            } else {
+                String name = prefix + f.getName() + "/";
+                names.add(name);
+                files.add(null);
+                collect(name, f, names, files);
+            }
+        }
+    }
+
+    private static boolean isStored(String name) {
+        int index = name.lastIndexOf('.');
+        return index >= 0 && STORED_EXTENSIONS.contains(name.substring(index).toLowerCase(Locale.ROOT));
+    }
+
+    private static SignCache.Digest getDigest(Future<SignCache.Digest> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static String writeMF(Manifest manifest, RawZipWriter zip) throws NoSuchAlgorithmException, IOException {
         Attributes main = manifest.getMainAttributes();
         main.putValue("Manifest-Version", "1.0");
         main.putValue("Created-By", "Auto.js");
-        zos.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
-        manifest.write(dos);
-        zos.closeEntry();
-        return eBase64(md.digest());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        byte[] content = bytes.toByteArray();
+        zip.writeDeflated("META-INF/MANIFEST.MF", content);
+        return eBase64(MessageDigest.getInstance("SHA1").digest(content));
     }
 
-    private static void writeRSA(ZipOutputStream zos, byte[] sign) throws IOException {
-        zos.putNextEntry(new ZipEntry("META-INF/CERT.RSA"));
-        zos.write(dBase64(Constants.sigPrefix));
-        zos.write(sign);
-        zos.closeEntry();
+    private static void writeRSA(RawZipWriter zip, byte[] sign) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(dBase64(Constants.sigPrefix));
+        bytes.write(sign);
+        zip.writeDeflated("META-INF/CERT.RSA", bytes.toByteArray());
     }
 
-    private static byte[] writeSF(ZipOutputStream zos, Manifest sf, String sha1Manifest) throws Exception {
+    private static byte[] writeSF(RawZipWriter zip, Manifest sf, String sha1Manifest) throws Exception {
         Signature signature = instanceSignature();
-        zos.putNextEntry(new ZipEntry("META-INF/CERT.SF"));
-        TinySign.SignatureOutputStream out = new TinySign.SignatureOutputStream(zos, signature);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TinySign.SignatureOutputStream out = new TinySign.SignatureOutputStream(bytes, signature);
         out.write("Signature-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8));
         out.write(("Created-By: tiny-sign-" + Objects.requireNonNull(TinySign.class.getPackage()).getImplementationVersion() + "\r\n").getBytes(StandardCharsets.UTF_8));
         out.write("SHA1-Digest-Manifest: ".getBytes(StandardCharsets.UTF_8));
@@ -155,27 +235,10 @@ public class TinySign {
         out.write(13);
         out.write(10);
         sf.write(out);
-        zos.closeEntry();
+        zip.writeDeflated("META-INF/CERT.SF", bytes.toByteArray());
         return signature.sign();
     }
 
-    private static void zipAndSha1(File dir, ZipOutputStream zos, DigestOutputStream dos, Manifest m) throws IOException {
-        File[] files = dir.listFiles();
-
-        if (files != null) {
-            for (File f : files) {
-                if (!f.getName().startsWith("META-INF")) {
-                    if (f.isFile()) {
-                        doFile(f.getName(), f, zos, dos, m);
-                    } else {
-                        doDir(f.getName() + "/", f, zos, dos, m);
-                    }
-                }
-            }
-        }
-
-    }
-
     private static class SignatureOutputStream extends FilterOutputStream {
         private final Signature mSignature;
 
@@ -8,6 +8,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.autojs.autojs.core.activity.ActivityInfoProvider;
+import org.autojs.autojs.core.automator.UiSnapshot;
 import org.autojs.autojs.permission.UsageStatsPermission;
 import org.autojs.autojs.runtime.accessibility.AccessibilityConfig;
 import org.autojs.autojs.tool.UiHandler;
@@ -33,6 +34,7 @@ public abstract class AccessibilityBridge {
     public static final int FLAG_FIND_ON_UI_THREAD = 1;
     public static final int FLAG_USE_USAGE_STATS = 2;
     public static final int FLAG_USE_SHELL = 4;
+    public static final int FLAG_USE_SNAPSHOT = 8;
 
     private int mMode = MODE_NORMAL;
     private int mFlags = 0;
@@ -121,12 +123,14 @@ public abstract class AccessibilityBridge {
 
     public void setWindowFilter(WindowFilter windowFilter) {
         mWindowFilter = windowFilter;
+        UiSnapshot.invalidate();
     }
 
     public abstract ActivityInfoProvider getInfoProvider();
 
     public void setMode(int mode) {
         mMode = mode;
+        UiSnapshot.invalidate();
     }
 
     public int getFlags() {
@@ -135,6 +139,7 @@ public abstract class AccessibilityBridge {
 
     public void setFlags(int flags) {
         mFlags = flags;
+        UiSnapshot.invalidate();
         if ((mFlags & FLAG_USE_USAGE_STATS) != 0) {
             if (!mUsageStatsPerm.has()) {
                 mUsageStatsPerm.config();
@@ -54,6 +54,7 @@ open class AccessibilityService : android.accessibilityservice.AccessibilityServ
     override fun onAccessibilityEvent(event: AccessibilityEvent) {
         instance = this
         connected = true
+        WindowChangeObserver.onAccessibilityEvent(event)
         val type = event.eventType
         eventBox[type]?.onAccessibilityEvent(AccessibilityEventWrapper(event))
         if (containsAllEventTypes || eventTypes.contains(type)) {
@@ -2,6 +2,7 @@
 
 package org.autojs.autojs.core.accessibility
 
+import android.graphics.Rect
 import android.os.Looper
 import android.os.SystemClock
 import android.view.accessibility.AccessibilityNodeInfo
@@ -18,6 +19,7 @@ import org.autojs.autojs.core.automator.UiObject.Companion.Detector.Result
 import org.autojs.autojs.core.automator.UiObject.Companion.RESULT_TYPE_WIDGET
 import org.autojs.autojs.core.automator.UiObjectActions
 import org.autojs.autojs.core.automator.UiObjectCollection
+import org.autojs.autojs.core.automator.UiSnapshot
 import org.autojs.autojs.core.automator.UiObjectCollection.Companion.EMPTY
 import org.autojs.autojs.core.automator.UiObjectCollection.Companion.of
 import org.autojs.autojs.core.automator.filter.ActionFilter
@@ -39,11 +41,15 @@ import org.autojs.autojs.core.automator.filter.MetricsMinFilter
 import org.autojs.autojs.core.automator.filter.MetricsRangeFilter
 import org.autojs.autojs.core.automator.filter.MinIntFilter
 import org.autojs.autojs.core.automator.filter.PackageNameFilter
+import org.autojs.autojs.core.automator.filter.ScriptFilter
 import org.autojs.autojs.core.automator.filter.Selector
 import org.autojs.autojs.core.automator.filter.TextFilter
 import org.autojs.autojs.core.automator.filter.ToleranceFilter
 import org.autojs.autojs.core.automator.search.BFS
+import org.autojs.autojs.core.automator.search.BoundedSearch
 import org.autojs.autojs.core.automator.search.DFS
+import org.autojs.autojs.core.automator.search.IndexedSearch
+import org.autojs.autojs.core.automator.search.ParallelSearch
 import org.autojs.autojs.core.automator.search.SearchAlgorithm
 import org.autojs.autojs.runtime.exception.ScriptInterruptedException
 import org.autojs.autojs.util.App
@@ -67,6 +73,12 @@ open class UiSelector : UiObjectActions {
 
     internal var searchAlgorithm: SearchAlgorithm = DFS
 
+    internal var isIndexed = false
+
+    internal var waitMode = WAIT_MODE_EVENT
+
+    internal var pollInterval: Long? = null
+
     private val mAccessibilityBridge: AccessibilityBridge?
 
     private val mAllocator: AccessibilityNodeInfoAllocator?
@@ -489,18 +501,64 @@ open class UiSelector : UiObjectActions {
     fun algorithm(str: String) = when {
         str.equals("BFS", true) -> also { searchAlgorithm = BFS }
         str.equals("DFS", true) -> also { searchAlgorithm = DFS }
+        str.equals("PARALLEL", true) -> also { searchAlgorithm = ParallelSearch() }
         else -> throw IllegalArgumentException(str(R.string.error_unknown_algorithm_selector_param, str))
     }
 
+    /**
+     * Select a search algorithm with pruning options:
+     * - maxDepth: nodes deeper than it (window roots have depth 0) are not visited
+     * - region: [left, top, right, bottom] in screen, subtrees outside of it are not visited
+     * - visibleOnly: subtrees not visible to user are not visited
+     */
+    @ScriptInterface
+    fun algorithm(str: String, options: Map<*, *>): UiSelector {
+        val maxDepth = (options["maxDepth"] as? Number)?.toInt() ?: Int.MAX_VALUE
+        val region = (options["region"] as? List<*>)?.let { list ->
+            require(list.size == 4) { str(R.string.error_illegal_argument, "region", list) }
+            list.map { (it as Number).toInt() }.let { (l, t, r, b) -> Rect(l, t, r, b) }
+        }
+        val visibleOnly = options["visibleOnly"] as? Boolean ?: false
+        return when {
+            str.equals("BFS", true) -> also { searchAlgorithm = BoundedSearch(true, maxDepth, region, visibleOnly) }
+            str.equals("DFS", true) -> also { searchAlgorithm = BoundedSearch(false, maxDepth, region, visibleOnly) }
+            str.equals("PARALLEL", true) -> also { searchAlgorithm = ParallelSearch(BoundedSearch(false, maxDepth, region, visibleOnly)) }
+            else -> throw IllegalArgumentException(str(R.string.error_unknown_algorithm_selector_param, str))
+        }
+    }
+
+    /**
+     * Whether to find nodes by platform id/text lookups instead of traversing the whole tree (false by default).
+     * Results are then exactly what the lookups return, filtered by the whole selector,
+     * so nodes of providers without lookup support, or of another package for a short id, are not found.
+     * The tree is traversed only if the selector has no id or text filter, or the lookup fails.
+     */
+    @ScriptInterface
+    fun indexed(b: Boolean) = also { isIndexed = b }
+
+    /**
+     * Set how [findOne] and [untilFind] wait between searches.
+     * "event" re-evaluates the selector when a window change event arrives (with [pollInterval] as fallback),
+     * "poll" re-evaluates it every [pollInterval] milliseconds.
+     */
+    @ScriptInterface
+    fun waitMode(str: String) = when {
+        str.equals(WAIT_MODE_EVENT, true) -> also { waitMode = WAIT_MODE_EVENT }
+        str.equals(WAIT_MODE_POLL, true) -> also { waitMode = WAIT_MODE_POLL }
+        else -> throw IllegalArgumentException(str(R.string.error_illegal_argument, "waitMode", str))
+    }
+
+    @ScriptInterface
+    fun pollInterval(millis: Long) = also {
+        require(millis > 0) { str(R.string.error_illegal_argument, "pollInterval", millis) }
+        pollInterval = millis
+    }
+
     @ScriptInterface
     fun action(vararg actions: Any) = also { addFilter(ActionFilter(actions)) }
 
     @ScriptInterface
-    fun filter(filter: BooleanFilter.BooleanSupplier) = also {
-        addFilter(object : Filter {
-            override fun filter(node: UiObject) = filter[node]
-        })
-    }
+    fun filter(filter: BooleanFilter.BooleanSupplier) = also { addFilter(ScriptFilter(filter)) }
 
     @ScriptInterface
     fun hasChildren() = also { addFilter(BooleanFilter(BooleanFilter.HAS_CHILDREN)) }
@@ -666,8 +724,12 @@ open class UiSelector : UiObjectActions {
         val start = SystemClock.uptimeMillis()
         fun timedOut() = timeout > 0 && SystemClock.uptimeMillis() - start > timeout
         do {
+            val version = WindowChangeObserver.version
+            val searchStart = SystemClock.uptimeMillis()
             find(1).takeIf { it.isNotEmpty() }?.let { return it[0] }
-            if (timedOut()) return null else intermission()
+            if (timedOut()) return null
+            val remaining = if (timeout > 0) timeout - (SystemClock.uptimeMillis() - start) + 1 else Long.MAX_VALUE
+            awaitNextSearch(version, searchStart, remaining)
         } while (true)
     }
 
@@ -689,7 +751,9 @@ open class UiSelector : UiObjectActions {
             throw IllegalThreadStateException(str(R.string.error_function_called_in_ui_thread, "untilFind"))
         }
         do {
-            find().takeIf { it.isNotEmpty() }?.let { return it } ?: intermission()
+            val version = WindowChangeObserver.version
+            val searchStart = SystemClock.uptimeMillis()
+            find().takeIf { it.isNotEmpty() }?.let { return it } ?: awaitNextSearch(version, searchStart, Long.MAX_VALUE)
         } while (true)
     }
 
@@ -716,13 +780,46 @@ open class UiSelector : UiObjectActions {
 
     internal fun findOneOf(root: UiObject): UiObject? = findOf(root, 1).takeIf { it.size() > 0 }?.get(0)
 
-    internal fun findAndReturnList(root: UiObject, max: Int = Int.MAX_VALUE): List<UiObject> = searchAlgorithm.search(root, selector, max)
+    internal fun findAndReturnList(root: UiObject, max: Int = Int.MAX_VALUE): List<UiObject> {
+        // Lookups would bypass the depth, region and visibility limits of a bounded search.
+        if (isIndexed && searchAlgorithm !is BoundedSearch) {
+            IndexedSearch.search(root, selector, mAllocator, max)?.let { return it }
+        }
+        return searchAlgorithm.search(root, selector, max)
+    }
 
-    protected fun findImpl(max: Int): UiObjectCollection = findImpl(mAccessibilityBridge?.windowRoots() ?: emptyList(), max)
+    protected fun findImpl(max: Int): UiObjectCollection {
+        mAccessibilityBridge ?: return findImpl(emptyList(), max)
+        if (mAccessibilityBridge.flags and AccessibilityBridge.FLAG_USE_SNAPSHOT != 0) {
+            return findInSnapshot(UiSnapshot.obtain(mAccessibilityBridge::windowRoots, mAllocator), max)
+        }
+        return findImpl(mAccessibilityBridge.windowRoots(), max)
+    }
+
+    private fun findInSnapshot(snapshot: UiSnapshot, max: Int): UiObjectCollection {
+        val result: MutableList<UiObject?> = ArrayList()
+        for (root in snapshot.roots) {
+            if (mAccessibilityBridge == null || !mAccessibilityBridge.config.whiteListContains("${root.packageName}")) {
+                // Traversal of a snapshot is in-process, so platform lookups would only add Binder calls.
+                result.addAll(searchAlgorithm.search(root, selector, max - result.size))
+                if (result.size >= max) {
+                    break
+                }
+            }
+        }
+        return of(result)
+    }
 
     protected fun findImpl(node: AccessibilityNodeInfo, max: Int): UiObjectCollection = findImpl(listOf(node), max)
 
     protected fun findImpl(roots: List<AccessibilityNodeInfo?>, max: Int): UiObjectCollection {
+        (searchAlgorithm as? ParallelSearch)?.let { parallelSearch ->
+            // Subtrees of all window roots are walked concurrently, without platform lookups.
+            val niceRoots = roots.filterNotNull()
+                .filter { mAccessibilityBridge == null || !mAccessibilityBridge.config.whiteListContains("${it.packageName}") }
+                .map { UiObject.createRoot(it, mAllocator) }
+            return of(parallelSearch.searchAll(niceRoots, selector, max))
+        }
         val result: MutableList<UiObject?> = ArrayList()
         for (root in roots.filterNotNull()) {
             if (mAccessibilityBridge == null || !mAccessibilityBridge.config.whiteListContains("${root.packageName}")) {
@@ -746,6 +843,29 @@ open class UiSelector : UiObjectActions {
         }
     }
 
+    /**
+     * Wait before searching again, where [searchStart] is when the last search started.
+     */
+    private fun awaitNextSearch(sinceVersion: Long, searchStart: Long, remaining: Long) {
+        if (Thread.currentThread().isInterrupted) {
+            throw ScriptInterruptedException()
+        }
+        if (waitMode == WAIT_MODE_EVENT && AccessibilityService.isRunning()) {
+            val waitStart = SystemClock.uptimeMillis()
+            if (WindowChangeObserver.awaitChange(sinceVersion, minOf(pollInterval ?: DEFAULT_EVENT_FALLBACK_INTERVAL, remaining))) {
+                // Animations and progress bars send content changes continuously,
+                // so searches are spaced at least as far apart as polling would space them.
+                val gap = searchStart + MIN_EVENT_SEARCH_INTERVAL - SystemClock.uptimeMillis()
+                val left = remaining - (SystemClock.uptimeMillis() - waitStart)
+                if (gap > 0 && left > 0) {
+                    intermission(minOf(gap, left))
+                }
+            }
+        } else {
+            intermission(minOf(pollInterval ?: DEFAULT_POLL_INTERVAL, remaining))
+        }
+    }
+
     private fun findOf(root: UiObject, max: Int): UiObjectCollection = of(findAndReturnList(root, max))
 
     private fun addFilter(filter: Filter) = also { selector.add(filter) }
@@ -754,6 +874,9 @@ open class UiSelector : UiObjectActions {
         selector?.let {
             this.selector.append(it)
             this.searchAlgorithm = it.searchAlgorithm
+            this.isIndexed = it.isIndexed
+            this.waitMode = it.waitMode
+            this.pollInterval = it.pollInterval
         }
     }
 
@@ -761,6 +884,15 @@ open class UiSelector : UiObjectActions {
 
         internal const val ID_IDENTIFIER = ":id/"
 
+        internal const val WAIT_MODE_EVENT = "event"
+        internal const val WAIT_MODE_POLL = "poll"
+
+        private const val DEFAULT_POLL_INTERVAL = 50L
+
+        private const val DEFAULT_EVENT_FALLBACK_INTERVAL = 500L
+
+        private const val MIN_EVENT_SEARCH_INTERVAL = DEFAULT_POLL_INTERVAL
+
         private val a11yToolService by lazy {
             AccessibilityTool(GlobalAppContext.get()).service
         }
@@ -1105,12 +1237,12 @@ open class UiSelector : UiObjectActions {
 
         private fun isUiThread() = Looper.myLooper() == Looper.getMainLooper()
 
-        private fun intermission() {
+        private fun intermission(millis: Long) {
             if (Thread.currentThread().isInterrupted) {
                 throw ScriptInterruptedException()
             }
             try {
-                Thread.sleep(50)
+                Thread.sleep(millis)
             } catch (e: InterruptedException) {
                 throw ScriptInterruptedException()
             }
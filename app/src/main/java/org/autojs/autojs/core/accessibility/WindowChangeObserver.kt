@@ -0,0 +1,85 @@
+package org.autojs.autojs.core.accessibility
+
+import android.os.SystemClock
+import android.view.accessibility.AccessibilityEvent
+import android.view.accessibility.AccessibilityEvent.TYPE_VIEW_SCROLLED
+import android.view.accessibility.AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED
+import android.view.accessibility.AccessibilityEvent.TYPE_WINDOWS_CHANGED
+import android.view.accessibility.AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+import android.view.accessibility.AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+import org.autojs.autojs.runtime.exception.ScriptInterruptedException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps a version number of window contents, increased by accessibility events which may change the node tree,
+ * so that waiting selectors can sleep until something actually changed instead of polling.
+ */
+object WindowChangeObserver {
+
+    private const val WINDOW_CHANGE_EVENT_TYPES = TYPE_WINDOW_CONTENT_CHANGED or
+            TYPE_WINDOW_STATE_CHANGED or
+            TYPE_WINDOWS_CHANGED or
+            TYPE_VIEW_SCROLLED or
+            TYPE_VIEW_TEXT_CHANGED
+
+    private const val WINDOW_STRUCTURE_EVENT_TYPES = TYPE_WINDOW_STATE_CHANGED or TYPE_WINDOWS_CHANGED
+
+    private val mLock = Object()
+
+    private val mWindowVersions = ConcurrentHashMap<Int, Long>()
+
+    @Volatile
+    var version = 0L
+        private set
+
+    /**
+     * Increased when windows are added, removed or replaced (e.g. an activity transition).
+     */
+    @Volatile
+    var structureVersion = 0L
+        private set
+
+    /**
+     * Content version of a single window, increased by content events whose window id is [windowId].
+     */
+    fun windowVersion(windowId: Int) = mWindowVersions[windowId] ?: 0L
+
+    fun isWindowChangeEvent(event: AccessibilityEvent) = event.eventType and WINDOW_CHANGE_EVENT_TYPES != 0
+
+    fun onAccessibilityEvent(event: AccessibilityEvent) {
+        if (isWindowChangeEvent(event)) {
+            synchronized(mLock) {
+                if (event.eventType and WINDOW_STRUCTURE_EVENT_TYPES != 0) {
+                    structureVersion += 1
+                }
+                mWindowVersions.merge(event.windowId, 1L) { a, b -> a + b }
+                version += 1
+                mLock.notifyAll()
+            }
+        }
+    }
+
+    /**
+     * Block until the version differs from [sinceVersion] or [timeout] milliseconds elapsed.
+     *
+     * @return true if a window change happened
+     */
+    fun awaitChange(sinceVersion: Long, timeout: Long): Boolean {
+        val deadline = SystemClock.uptimeMillis() + timeout
+        synchronized(mLock) {
+            while (version == sinceVersion) {
+                val remaining = deadline - SystemClock.uptimeMillis()
+                if (remaining <= 0) {
+                    return false
+                }
+                try {
+                    mLock.wait(remaining)
+                } catch (e: InterruptedException) {
+                    throw ScriptInterruptedException()
+                }
+            }
+            return true
+        }
+    }
+
+}
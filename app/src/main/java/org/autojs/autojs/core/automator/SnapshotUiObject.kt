@@ -0,0 +1,50 @@
+package org.autojs.autojs.core.automator
+
+import android.view.accessibility.AccessibilityNodeInfo
+import org.autojs.autojs.core.accessibility.AccessibilityNodeInfoAllocator
+
+/**
+ * A node of [UiSnapshot], whose children and parent are resolved in process without Binder calls.
+ *
+ * Properties (id, text, desc, class, bounds, flags) come from the node info captured with the snapshot,
+ * while actions are still performed on the live node. Use [resolve] to get a refreshed [UiObject].
+ */
+class SnapshotUiObject internal constructor(
+    private val info: AccessibilityNodeInfo,
+    private val allocator: AccessibilityNodeInfoAllocator?,
+    depth: Int,
+    indexInParent: Int,
+    private val mParent: SnapshotUiObject?,
+) : UiObject(info, allocator, depth, indexInParent) {
+
+    internal val children = ArrayList<SnapshotUiObject?>()
+
+    override fun child(i: Int): UiObject? {
+        if (i < 0) {
+            return (i + children.size).takeIf { it >= 0 }?.let { child(it) }
+        }
+        return children.getOrNull(i)
+    }
+
+    override fun childCount() = children.size
+
+    override fun parent(): UiObject? = mParent
+
+    /**
+     * Get a live [UiObject] of this node with up-to-date properties, or null if the node no longer exists.
+     */
+    fun resolve(): UiObject? {
+        @Suppress("DEPRECATION")
+        val live = AccessibilityNodeInfo.obtain(info)
+        return when (live.refresh()) {
+            true -> UiObject(live, allocator, depth(), indexInParent())
+            else -> null
+        }
+    }
+
+    @Deprecated("Deprecated in Java")
+    override fun recycle() {
+        // Nodes are owned by the snapshot and reused by subsequent queries.
+    }
+
+}
@@ -34,10 +34,14 @@ import org.opencv.core.Size
 open class UiObject(
     info: Any?,
     private val allocator: AccessibilityNodeInfoAllocator?,
-    private val depth: Int,
-    private val indexInParent: Int,
+    depth: Int,
+    indexInParent: Int,
 ) : AccessibilityNodeInfoCompat(info), UiObjectActions {
 
+    // Either may be UNKNOWN for nodes returned by platform lookups, and is then worked out on first use.
+    private var mDepth = depth
+    private var mIndexInParent = indexInParent
+
     private val bounds by lazy { AccessibilityNodeInfoHelper.getBoundsInScreen(this) }
 
     constructor(
@@ -55,7 +59,7 @@ open class UiObject(
 
     open fun parent(): UiObject? = try {
         super.getParent()?.let { node ->
-            UiObject(node.unwrap(), depth - 1, node.parent?.run {
+            UiObject(node.unwrap(), depth() - 1, node.parent?.run {
                 // @Dubious by SuperMonster003 on May 26, 2022.
                 //  ! May lead to poor performance?
                 (0 until childCount).firstOrNull { getChild(it) == node } ?: -1
@@ -73,7 +77,7 @@ open class UiObject(
             return (i + childCount).takeIf { it >= 0 }?.let { child(it) }
         }
         return try {
-            super.getChild(i)?.run { UiObject(unwrap(), depth + 1, i) }
+            super.getChild(i)?.run { UiObject(unwrap(), depth() + 1, i) }
         } catch (e: IllegalStateException) {
             // FIXME: 2017/5/5
             null.also { e.printStackTrace() }
@@ -88,13 +92,13 @@ open class UiObject(
 
     open fun offset(i: Int): UiObject? = try {
         if (i == 0) this
-        else parent()?.child(indexInParent + i)
+        else parent()?.child(indexInParent() + i)
     } catch (e: ArrayIndexOutOfBoundsException) {
         null.also { e.printStackTrace() }
     }
 
     open fun sibling(i: Int): UiObject? = try {
-        if (i == indexInParent) this
+        if (i == indexInParent()) this
         else parent()?.child(i)
     } catch (e: ArrayIndexOutOfBoundsException) {
         null.also { e.printStackTrace() }
@@ -124,7 +128,20 @@ open class UiObject(
 
     fun siblings() = List(siblingCount()) { sibling(it) }.let { UiObjectCollection.of(it) }
 
-    fun indexInParent() = indexInParent
+    fun indexInParent(): Int {
+        if (mIndexInParent == UNKNOWN) {
+            mIndexInParent = try {
+                super.getParent()?.let { parent ->
+                    (0 until parent.childCount).firstOrNull { i ->
+                        parent.getChild(i)?.let { child -> (child == this).also { child.recycle() } } ?: false
+                    }.also { parent.recycle() }
+                } ?: 0
+            } catch (e: IllegalStateException) {
+                null
+            } ?: -1
+        }
+        return mIndexInParent
+    }
 
     @JvmOverloads
     fun find(selector: UiSelector? = UiSelector()): UiObjectCollection = (selector ?: UiSelector()).findOf(this)
@@ -233,7 +250,24 @@ open class UiObject(
 
     open fun packageName(): String? = packageName?.toString()
 
-    open fun depth() = depth
+    open fun depth(): Int {
+        if (mDepth == UNKNOWN) {
+            var depth = 0
+            try {
+                var ancestor = super.getParent()
+                while (ancestor != null) {
+                    depth += 1
+                    val next = ancestor.parent
+                    ancestor.recycle()
+                    ancestor = next
+                }
+            } catch (e: IllegalStateException) {
+                e.printStackTrace()
+            }
+            mDepth = depth
+        }
+        return mDepth
+    }
 
     open fun checkable() = isCheckable
 
@@ -479,6 +513,11 @@ open class UiObject(
 
     companion object {
 
+        /**
+         * Depth or index in parent which is not known yet.
+         */
+        internal const val UNKNOWN = -2
+
         internal const val ACTION_APPEND_TEXT = 0x00200001
         internal const val COMPASS_PASS_ON = "%"
         internal const val RESULT_TYPE_WIDGET = "widget"
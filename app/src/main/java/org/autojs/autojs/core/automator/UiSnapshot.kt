@@ -0,0 +1,83 @@
+package org.autojs.autojs.core.automator
+
+import android.util.Log
+import android.view.accessibility.AccessibilityNodeInfo
+import org.autojs.autojs.core.accessibility.AccessibilityNodeInfoAllocator
+import org.autojs.autojs.core.accessibility.WindowChangeObserver
+
+/**
+ * In-process copy of window trees, which answers selector queries without Binder calls
+ * until an accessibility event reports a change of any captured window.
+ */
+class UiSnapshot private constructor(
+    val roots: List<SnapshotUiObject>,
+    private val mStructureVersion: Long,
+    private val mWindowVersions: Map<Int, Long>,
+) {
+
+    val isValid
+        get() = WindowChangeObserver.structureVersion == mStructureVersion &&
+                mWindowVersions.all { (windowId, version) -> WindowChangeObserver.windowVersion(windowId) == version }
+
+    companion object {
+
+        private val TAG = UiSnapshot::class.java.simpleName
+
+        @Volatile
+        private var sCache: UiSnapshot? = null
+
+        /**
+         * Get the cached snapshot if it is still valid, or capture a new one from [roots].
+         */
+        @JvmStatic
+        fun obtain(roots: () -> List<AccessibilityNodeInfo?>, allocator: AccessibilityNodeInfoAllocator?): UiSnapshot {
+            sCache?.takeIf { it.isValid }?.let { return it }
+            return capture(roots(), allocator).also { sCache = it }
+        }
+
+        @JvmStatic
+        fun invalidate() {
+            sCache = null
+        }
+
+        private fun capture(roots: List<AccessibilityNodeInfo?>, allocator: AccessibilityNodeInfoAllocator?): UiSnapshot {
+            // Versions are read before capturing, so that events arriving during the capture invalidate the result.
+            val structureVersion = WindowChangeObserver.structureVersion
+            val windowVersions = roots.filterNotNull().associate { it.windowId to WindowChangeObserver.windowVersion(it.windowId) }
+            val start = System.currentTimeMillis()
+            var count = 0
+            val snapshotRoots = roots.filterNotNull().map { root ->
+                SnapshotUiObject(root, allocator, 0, -1, null).also { count += captureChildren(it, root, allocator) }
+            }
+            Log.d(TAG, "captured $count nodes in ${System.currentTimeMillis() - start} ms")
+            return UiSnapshot(snapshotRoots, structureVersion, windowVersions)
+        }
+
+        private fun captureChildren(rootNode: SnapshotUiObject, rootInfo: AccessibilityNodeInfo, allocator: AccessibilityNodeInfoAllocator?): Int {
+            var count = 1
+            val stack = ArrayDeque<Pair<SnapshotUiObject, AccessibilityNodeInfo>>()
+            stack.addLast(rootNode to rootInfo)
+            while (stack.isNotEmpty()) {
+                val (node, info) = stack.removeLast()
+                for (i in 0 until info.childCount) {
+                    val childInfo = try {
+                        info.getChild(i)
+                    } catch (e: IllegalStateException) {
+                        null
+                    }
+                    if (childInfo == null) {
+                        node.children += null
+                        continue
+                    }
+                    val child = SnapshotUiObject(childInfo, allocator, node.depth() + 1, i, node)
+                    node.children += child
+                    stack.addLast(child to childInfo)
+                    count += 1
+                }
+            }
+            return count
+        }
+
+    }
+
+}
@@ -8,7 +8,7 @@ import org.autojs.autojs.core.automator.UiObject
  */
 object DescFilter {
 
-    private val DESC_GETTER = object : KeyGetter {
+    internal val DESC_GETTER = object : KeyGetter {
 
         override fun getKey(nodeInfo: UiObject) = nodeInfo.contentDescription?.toString()
 
@@ -9,7 +9,7 @@ import org.autojs.autojs.core.automator.UiObject
  */
 object IdFilter {
 
-    private val ID_GETTER = object : KeyGetter {
+    internal val ID_GETTER = object : KeyGetter {
 
         override fun getKey(nodeInfo: UiObject) = nodeInfo.viewIdResourceName
 
@@ -20,16 +20,7 @@ object IdFilter {
     @Suppress("CovariantEquals")
     fun equals(str: String) = when (str.contains(ID_IDENTIFIER)) {
         true -> StringEqualsFilter(str, ID_GETTER)
-        else -> object : Filter {
-            override fun filter(node: UiObject) = node.id()?.let { id ->
-                when (id.contains(ID_IDENTIFIER)) {
-                    true -> id.split(ID_IDENTIFIER).last() == str
-                    else -> id == str
-                }
-            } ?: false
-
-            override fun toString() = "id(\"$str\")"
-        }
+        else -> ShortIdEqualsFilter(str)
     }
 
     fun startsWith(prefix: String) = when (prefix.contains(ID_IDENTIFIER)) {
@@ -54,4 +45,20 @@ object IdFilter {
 
     fun match(regex: String) = StringMatchFilter(regex, ID_GETTER)
 
+    /**
+     * Matches the entry name of an id (the part after ":id/") in whatever package it is declared.
+     */
+    class ShortIdEqualsFilter(val id: String) : Filter {
+
+        override fun filter(node: UiObject) = node.id()?.let { nodeId ->
+            when (nodeId.contains(ID_IDENTIFIER)) {
+                true -> nodeId.split(ID_IDENTIFIER).last() == id
+                else -> nodeId == id
+            }
+        } ?: false
+
+        override fun toString() = "id(\"$id\")"
+
+    }
+
 }
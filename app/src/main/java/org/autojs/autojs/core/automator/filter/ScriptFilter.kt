@@ -0,0 +1,14 @@
+package org.autojs.autojs.core.automator.filter
+
+import org.autojs.autojs.core.automator.UiObject
+
+/**
+ * Filter which calls back into a script, and so must only run on the thread of that script.
+ */
+class ScriptFilter(private val mSupplier: BooleanFilter.BooleanSupplier) : Filter {
+
+    override fun filter(node: UiObject) = mSupplier[node]
+
+    override fun toString() = "filter($mSupplier)"
+
+}
@@ -1,21 +1,109 @@
 package org.autojs.autojs.core.automator.filter
 
 import org.autojs.autojs.core.accessibility.UiSelector
+import org.autojs.autojs.core.accessibility.UiSelector.Companion.ID_IDENTIFIER
 import org.autojs.autojs.core.automator.UiObject
 import java.util.*
 
 class Selector : Filter {
 
+    /**
+     * A lookup the platform can answer without walking the tree
+     * (e.g. AccessibilityNodeInfo#findAccessibilityNodeInfosByViewId).
+     * Nodes returned by the lookup are those accepted by the source filter as far as the platform sees them,
+     * that is except nodes of providers without lookup support, and for a short id, nodes of other packages.
+     */
+    class IndexedLookup(val type: Int, val value: String) {
+
+        override fun toString() = "IndexedLookup{type=${TYPE_NAMES[type]}, value=\"$value\"}"
+
+        companion object {
+            const val TYPE_VIEW_ID = 0
+            const val TYPE_TEXT = 1
+
+            /**
+             * An id without package, looked up as an id of the package of the root.
+             */
+            const val TYPE_SHORT_VIEW_ID = 2
+
+            private val TYPE_NAMES = arrayOf("viewId", "text", "shortViewId")
+        }
+
+    }
+
     private val mFilters = LinkedList<Filter>()
 
-    override fun filter(node: UiObject) = mFilters.all { it.filter(node) }
+    private var mPlannedFilters: List<Filter>? = null
+
+    override fun filter(node: UiObject) = plannedFilters().all { it.filter(node) }
 
     private fun getFilter() = mFilters
 
-    fun add(filter: Filter) = mFilters.add(filter)
+    fun add(filter: Filter) = mFilters.add(filter).also { mPlannedFilters = null }
+
+    fun append(uiSelector: UiSelector) = mFilters.addAll(uiSelector.selector.getFilter()).also { mPlannedFilters = null }
 
-    fun append(uiSelector: UiSelector) = mFilters.addAll(uiSelector.selector.getFilter())
+    /**
+     * Filters sorted by estimated cost (stable), so that cheap flag or bounds checks reject nodes before regex ones.
+     */
+    private fun plannedFilters() = mPlannedFilters ?: mFilters.sortedBy { costOf(it) }.also { mPlannedFilters = it }
+
+    /**
+     * Whether any filter calls back into a script, so that nodes must be filtered on the script thread.
+     */
+    fun hasScriptFilter() = mFilters.any { it is ScriptFilter }
+
+    /**
+     * Pick the most selective filter which can be answered by a platform lookup, or null if there is none.
+     */
+    fun indexedLookup(): IndexedLookup? {
+        var best: IndexedLookup? = null
+        var bestRank = Int.MAX_VALUE
+        for (filter in mFilters) {
+            val (lookup, rank) = when (filter) {
+                is StringEqualsFilter -> when {
+                    filter.mKeyGetter === IdFilter.ID_GETTER && filter.mValue.contains(ID_IDENTIFIER) -> {
+                        IndexedLookup(IndexedLookup.TYPE_VIEW_ID, filter.mValue) to 0
+                    }
+                    isTextGetter(filter.mKeyGetter) -> IndexedLookup(IndexedLookup.TYPE_TEXT, filter.mValue) to 1
+                    else -> null to Int.MAX_VALUE
+                }
+                is IdFilter.ShortIdEqualsFilter -> IndexedLookup(IndexedLookup.TYPE_SHORT_VIEW_ID, filter.id) to 0
+                is StringStartsWithFilter -> textLookup(filter.mKeyGetter, filter.mPrefix)
+                is StringEndsWithFilter -> textLookup(filter.mKeyGetter, filter.mSuffix)
+                is StringContainsFilter -> textLookup(filter.mKeyGetter, filter.mContains)
+                else -> null to Int.MAX_VALUE
+            }
+            if (lookup != null && lookup.value.isNotEmpty() && rank < bestRank) {
+                best = lookup
+                bestRank = rank
+            }
+        }
+        return best
+    }
 
     override fun toString() = mFilters.joinToString(".").ifEmpty { Selector::class.java.toString() }
 
-}
\ No newline at end of file
+    private companion object {
+
+        // @Hint findAccessibilityNodeInfosByText matches both text and content description, case-insensitively.
+        fun isTextGetter(getter: KeyGetter) = getter === TextFilter.TEXT_GETTER || getter === DescFilter.DESC_GETTER
+
+        fun textLookup(getter: KeyGetter, value: String) = when (isTextGetter(getter)) {
+            true -> IndexedLookup(IndexedLookup.TYPE_TEXT, value) to 2
+            else -> null to Int.MAX_VALUE
+        }
+
+        fun costOf(filter: Filter) = when (filter) {
+            is BooleanFilter, is IntFilter, is MinIntFilter, is MaxIntFilter -> 0
+            is BoundsFilter, is MetricsFilter, is MetricsMinFilter, is MetricsMaxFilter, is MetricsRangeFilter,
+            is ToleranceFilter, is DoubleMinFilter -> 1
+            is StringEqualsFilter, is StringStartsWithFilter, is StringEndsWithFilter, is StringContainsFilter,
+            is StringListEqualsFilter, is StringListStartsWithFilter, is StringListEndsWithFilter, is StringListContainsFilter -> 2
+            is StringMatchFilter, is StringMatchesFilter, is StringListMatchFilter, is StringListMatchesFilter -> 3
+            else -> 4
+        }
+
+    }
+
+}
@@ -6,7 +6,7 @@ import org.autojs.autojs.core.automator.UiObject
  * Created by Stardust on 2017/3/9.
  * Modified by SuperMonster003 as of Nov 19, 2022.
  */
-class StringContainsFilter internal constructor(private val mContains: String, private val mKeyGetter: KeyGetter) : Filter {
+class StringContainsFilter internal constructor(internal val mContains: String, internal val mKeyGetter: KeyGetter) : Filter {
 
     override fun filter(node: UiObject) = mKeyGetter.getKey(node)?.contains(mContains) ?: false
 
@@ -6,7 +6,7 @@ import org.autojs.autojs.core.automator.UiObject
  * Created by Stardust on 2017/3/9.
  * Modified by SuperMonster003 as of Nov 19, 2022.
  */
-class StringEndsWithFilter(private val mSuffix: String, private val mKeyGetter: KeyGetter) : Filter {
+class StringEndsWithFilter(internal val mSuffix: String, internal val mKeyGetter: KeyGetter) : Filter {
 
     override fun filter(node: UiObject) = mKeyGetter.getKey(node)?.endsWith(mSuffix) ?: false
 
@@ -8,7 +8,7 @@ import org.autojs.autojs.core.automator.UiObject
  */
 object TextFilter {
 
-    private val TEXT_GETTER = object : KeyGetter {
+    internal val TEXT_GETTER = object : KeyGetter {
 
         override fun getKey(nodeInfo: UiObject) = nodeInfo.text?.toString()
 
@@ -0,0 +1,75 @@
+package org.autojs.autojs.core.automator.search
+
+import android.graphics.Rect
+import org.autojs.autojs.core.automator.UiObject
+import org.autojs.autojs.core.automator.filter.Filter
+import java.util.*
+
+/**
+ * DFS or BFS which does not descend into subtrees beyond [maxDepth],
+ * outside of [region] (in screen coordinates) or not visible to user when [visibleOnly] is set.
+ * A pruned node is neither matched nor visited, and neither are its descendants.
+ */
+class BoundedSearch(
+    private val isBreadthFirst: Boolean,
+    private val maxDepth: Int = Int.MAX_VALUE,
+    private val region: Rect? = null,
+    private val visibleOnly: Boolean = false,
+) : SearchAlgorithm {
+
+    fun isPruned(node: UiObject): Boolean {
+        if (node.depth() > maxDepth) {
+            return true
+        }
+        if (visibleOnly && !node.isVisibleToUser) {
+            return true
+        }
+        if (region != null && !Rect.intersects(region, Rect().also { node.getBoundsInScreen(it) })) {
+            return true
+        }
+        return false
+    }
+
+    fun canDescend(node: UiObject) = node.depth() < maxDepth
+
+    override fun search(root: UiObject, filter: Filter, limit: Int) = search(root, filter, limit) { false }
+
+    /**
+     * Search which stops with the nodes matched so far once [isCancelled] returns true.
+     */
+    @Suppress("DEPRECATION")
+    fun search(root: UiObject, filter: Filter, limit: Int, isCancelled: () -> Boolean): ArrayList<UiObject> {
+        val result = ArrayList<UiObject>()
+        if (isPruned(root)) {
+            return result
+        }
+        val nodes = ArrayDeque<UiObject>()
+        nodes.add(root)
+        while (nodes.isNotEmpty() && !isCancelled()) {
+            val node = if (isBreadthFirst) nodes.pollFirst()!! else nodes.pollLast()!!
+            if (canDescend(node)) {
+                val indices = if (isBreadthFirst) 0 until node.childCount else node.childCount - 1 downTo 0
+                for (i in indices) {
+                    val child = node.child(i) ?: continue
+                    if (isPruned(child)) {
+                        child.recycle()
+                    } else {
+                        nodes.addLast(child)
+                    }
+                }
+            }
+            if (filter.filter(node)) {
+                result.add(node)
+                if (result.size >= limit) {
+                    break
+                }
+            } else if (node !== root) {
+                node.recycle()
+            }
+        }
+        return result
+    }
+
+    override fun toString() = "BoundedSearch{${if (isBreadthFirst) "BFS" else "DFS"}, maxDepth=$maxDepth, region=$region, visibleOnly=$visibleOnly}"
+
+}
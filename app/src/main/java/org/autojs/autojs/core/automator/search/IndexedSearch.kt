@@ -0,0 +1,62 @@
+package org.autojs.autojs.core.automator.search
+
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
+import org.autojs.autojs.core.accessibility.AccessibilityNodeInfoAllocator
+import org.autojs.autojs.core.accessibility.UiSelector.Companion.ID_IDENTIFIER
+import org.autojs.autojs.core.automator.UiObject
+import org.autojs.autojs.core.automator.filter.Selector
+import org.autojs.autojs.core.automator.filter.Selector.IndexedLookup
+
+/**
+ * Seeds candidates from platform id/text lookups and applies the whole selector to them only,
+ * which takes a handful of IPC calls instead of visiting every node of the tree.
+ */
+object IndexedSearch {
+
+    /**
+     * @return matched nodes, which are final even if empty, or null if the selector has no indexed filter
+     * or the lookup failed (callers should then fall back to a tree traversal)
+     */
+    @Suppress("DEPRECATION")
+    fun search(root: UiObject, selector: Selector, allocator: AccessibilityNodeInfoAllocator?, limit: Int): List<UiObject>? {
+        val lookup = selector.indexedLookup() ?: return null
+        val candidates = try {
+            when (lookup.type) {
+                IndexedLookup.TYPE_VIEW_ID -> root.findAccessibilityNodeInfosByViewId(lookup.value)
+                IndexedLookup.TYPE_SHORT_VIEW_ID -> {
+                    val packageName = root.packageName ?: return null
+                    root.findAccessibilityNodeInfosByViewId("$packageName$ID_IDENTIFIER${lookup.value}")
+                }
+                else -> root.findAccessibilityNodeInfosByText(lookup.value)
+            }
+        } catch (e: IllegalStateException) {
+            return null
+        }
+        val result = ArrayList<UiObject>()
+        for (candidate in candidates) {
+            if (result.size >= limit) {
+                candidate.recycle()
+                continue
+            }
+            val node = wrap(root, candidate, allocator)
+            if (selector.filter(node)) {
+                result.add(node)
+            } else {
+                node.recycle()
+            }
+        }
+        return result
+    }
+
+    /**
+     * Depth and index in parent are left to be worked out on first use,
+     * as most candidates are rejected or returned without either being asked for.
+     */
+    private fun wrap(root: UiObject, node: AccessibilityNodeInfoCompat, allocator: AccessibilityNodeInfoAllocator?): UiObject {
+        if (node == root) {
+            return root
+        }
+        return UiObject(node.unwrap(), allocator, UiObject.UNKNOWN, UiObject.UNKNOWN)
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.autojs.autojs.core.automator.search
+
+import org.autojs.autojs.core.automator.UiObject
+import org.autojs.autojs.core.automator.filter.Filter
+import org.autojs.autojs.core.automator.filter.Selector
+import org.autojs.autojs.runtime.exception.ScriptInterruptedException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Searches subtrees of one or more roots concurrently with [delegate],
+ * and merges the results in pre-order (the same order as DFS).
+ * <p>
+ * Roots are expanded on the calling thread until there are enough subtrees to keep the pool busy.
+ * Only selectors made of Java filters are searched concurrently,
+ * as a selector with a script filter must be evaluated on the thread of its script.
+ * </p>
+ */
+class ParallelSearch(private val delegate: BoundedSearch = BoundedSearch(false)) : SearchAlgorithm {
+
+    /**
+     * A node matched while expanding, or a subtree left to [delegate].
+     */
+    private class Part(val node: UiObject, val isSubtree: Boolean)
+
+    override fun search(root: UiObject, filter: Filter, limit: Int) = searchAll(listOf(root), filter, limit)
+
+    fun searchAll(roots: List<UiObject>, filter: Filter, limit: Int): ArrayList<UiObject> {
+        if (filter !is Selector || filter.hasScriptFilter()) {
+            return searchSequentially(roots, filter, limit)
+        }
+        var parts = roots.map { Part(it, true) }
+        var levels = 0
+        while (levels++ < MAX_EXPANDED_LEVELS && parts.count { it.isSubtree } in 1 until TARGET_SUBTREE_COUNT) {
+            parts = expand(parts, roots, filter)
+        }
+        val isCancelled = AtomicBoolean()
+        val tasks = parts.map { part ->
+            part.takeIf { it.isSubtree }?.let {
+                sExecutor.submit<ArrayList<UiObject>> { delegate.search(it.node, filter, limit) { isCancelled.get() } }
+            }
+        }
+        val result = ArrayList<UiObject>()
+        try {
+            for ((index, part) in parts.withIndex()) {
+                val matched = tasks[index]?.get() ?: listOf(part.node)
+                matched.forEach { node ->
+                    if (result.size < limit) result.add(node) else if (roots.none { it === node }) node.recycle()
+                }
+                if (result.size >= limit) {
+                    cancel(isCancelled, tasks)
+                    break
+                }
+            }
+        } catch (e: InterruptedException) {
+            cancel(isCancelled, tasks)
+            throw ScriptInterruptedException()
+        } catch (e: ExecutionException) {
+            cancel(isCancelled, tasks)
+            throw RuntimeException(e.cause)
+        }
+        return result
+    }
+
+    /**
+     * Replace each subtree by its root, if matched, followed by the subtrees of its children.
+     */
+    @Suppress("DEPRECATION")
+    private fun expand(parts: List<Part>, roots: List<UiObject>, filter: Filter): List<Part> {
+        val expanded = ArrayList<Part>()
+        for (part in parts) {
+            val node = part.node
+            if (!part.isSubtree) {
+                expanded.add(part)
+                continue
+            }
+            if (delegate.isPruned(node)) {
+                if (roots.none { it === node }) node.recycle()
+                continue
+            }
+            val isMatched = filter.filter(node)
+            if (isMatched) {
+                expanded.add(Part(node, false))
+            }
+            if (delegate.canDescend(node)) {
+                for (i in 0 until node.childCount) {
+                    node.child(i)?.let { expanded.add(Part(it, true)) }
+                }
+            }
+            if (!isMatched && roots.none { it === node }) {
+                node.recycle()
+            }
+        }
+        return expanded
+    }
+
+    private fun searchSequentially(roots: List<UiObject>, filter: Filter, limit: Int): ArrayList<UiObject> {
+        val result = ArrayList<UiObject>()
+        for (root in roots) {
+            result.addAll(delegate.search(root, filter, limit - result.size))
+            if (result.size >= limit) {
+                break
+            }
+        }
+        return result
+    }
+
+    private fun cancel(isCancelled: AtomicBoolean, tasks: List<Future<ArrayList<UiObject>>?>) {
+        isCancelled.set(true)
+        tasks.forEach { it?.cancel(true) }
+    }
+
+    override fun toString() = "ParallelSearch{$delegate}"
+
+    companion object {
+
+        private val sThreadCount = AtomicInteger()
+
+        private val sPoolSize = Runtime.getRuntime().availableProcessors().coerceAtLeast(2)
+
+        /**
+         * Subtrees to split roots into, several per thread so that a large subtree does not leave the others idle.
+         */
+        private val TARGET_SUBTREE_COUNT = sPoolSize * 4
+
+        private const val MAX_EXPANDED_LEVELS = 4
+
+        private val sExecutor = Executors.newFixedThreadPool(sPoolSize) {
+            Thread(it, "ParallelSearch-${sThreadCount.incrementAndGet()}").apply { isDaemon = true }
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.autojs.autojs.core.image;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import org.autojs.autojs.runtime.exception.ScriptInterruptedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Match many templates against one frame concurrently.
+ * <p>
+ * The frame pyramid is built once and shared by all templates,
+ * and the per-template work is fanned out to a worker pool bounded by the count of CPU cores.
+ */
+public class BatchTemplateMatching {
+
+    public static class Result {
+        public final int index;
+        public final List<TemplateMatching.Match> matches;
+        public final long time;
+
+        public Result(int index, List<TemplateMatching.Match> matches, long time) {
+            this.index = index;
+            this.matches = matches;
+            this.time = time;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format("Result{index=%s, matches=%s, time=%sms}", index, matches, time);
+        }
+    }
+
+    private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private static final ExecutorService sExecutor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "BatchTemplateMatching-" + sThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param frame     pyramid of the frame (or a region of it) shared by all templates
+     * @param templates pyramids of templates
+     * @return results in the same order as templates
+     */
+    public static List<Result> match(ImagePyramid frame, List<ImagePyramid> templates, int matchMethod,
+                                     float weakThreshold, float strictThreshold, int maxLevel, int limit) {
+        // Build shared frame levels up front, so that workers do not contend for the pyramid lock.
+        int frameLevel = maxLevel;
+        if (maxLevel == TemplateMatching.MAX_LEVEL_AUTO) {
+            frameLevel = 0;
+            for (ImagePyramid template : templates) {
+                frameLevel = Math.max(frameLevel, TemplateMatching.selectPyramidLevel(frame.getBase(), template.getBase()));
+            }
+        }
+        frame.prepare(frameLevel);
+
+        List<Future<Result>> futures = new ArrayList<>(templates.size());
+        for (int i = 0; i < templates.size(); i++) {
+            int index = i;
+            ImagePyramid template = templates.get(i);
+            futures.add(sExecutor.submit(() -> {
+                long start = SystemClock.uptimeMillis();
+                List<TemplateMatching.Match> matches = TemplateMatching.fastTemplateMatching(
+                        frame, template, matchMethod, weakThreshold, strictThreshold, maxLevel, limit);
+                return new Result(index, matches, SystemClock.uptimeMillis() - start);
+            }));
+        }
+
+        List<Result> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new ScriptInterruptedException();
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+}
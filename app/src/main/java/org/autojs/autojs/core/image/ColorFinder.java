@@ -14,9 +14,7 @@ import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 
 /**
@@ -108,23 +106,32 @@ public class ColorFinder {
 
     @ScriptInterface
     public Point findPointByColors(ImageWrapper image, int firstColor, int threshold, Rect rect, int[] points) {
-        Point[] firstPoints = findPointsByColor(image, firstColor, threshold, rect);
+        Point point = new MultiColorFinder(firstColor, threshold, points).findFirst(image, rect);
         image.shoot();
-        return Arrays.stream(firstPoints)
-                .filter(Objects::nonNull)
-                .filter(firstPoint -> checksPath(image, firstPoint, threshold, points))
-                .findFirst()
-                .orElse(null);
+        if (point != null && rect != null) {
+            scalePoint(point);
+        }
+        return point;
     }
 
     @ScriptInterface
     public Point[] findPointsByColors(ImageWrapper image, int firstColor, int threshold, Rect rect, int[] points) {
-        Point[] firstPoints = findPointsByColor(image, firstColor, threshold, rect);
+        return findPointsByColors(image, firstColor, threshold, rect, points, 0);
+    }
+
+    @ScriptInterface
+    public Point[] findPointsByColors(ImageWrapper image, int firstColor, int threshold, Rect rect, int[] points, int limit) {
+        List<Point> result = new MultiColorFinder(firstColor, threshold, points).findAll(image, rect, limit);
         image.shoot();
-        return Arrays.stream(firstPoints)
-                .filter(Objects::nonNull)
-                .filter(firstPoint -> checksPath(image, firstPoint, threshold, points))
-                .toArray(Point[]::new);
+        if (rect != null) {
+            result.forEach(this::scalePoint);
+        }
+        return result.toArray(new Point[0]);
+    }
+
+    private void scalePoint(Point point) {
+        point.x = mScreenMetrics.scaleX((int) point.x);
+        point.y = mScreenMetrics.scaleX((int) point.y);
     }
 
     @Deprecated
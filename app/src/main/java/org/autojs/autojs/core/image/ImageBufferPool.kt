@@ -0,0 +1,150 @@
+package org.autojs.autojs.core.image
+
+import android.graphics.Bitmap
+import android.util.Log
+import org.autojs.autojs.annotation.ScriptInterface
+import org.autojs.autojs.core.opencv.Mat
+import org.autojs.autojs.core.opencv.OpenCVHelper
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide pool of [Bitmap] and [Mat] buffers keyed by (width, height, type).
+ *
+ * Buffers acquired from the pool have undefined content and must be fully overwritten by callers.
+ * Buffers handed back via [release] are retained until [maxRetainedBytes] is exceeded,
+ * in which case the least recently returned ones are freed.
+ * All of them are freed when the last running script exits.
+ */
+object ImageBufferPool {
+
+    private val TAG = ImageBufferPool::class.java.simpleName
+
+    private const val DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024
+
+    private data class Key(val width: Int, val height: Int, val type: Int, val isBitmap: Boolean)
+
+    // Access order is used for eviction, so the least recently touched key comes first.
+    private val mBuffers = LinkedHashMap<Key, ArrayDeque<Any>>(16, 0.75f, true)
+
+    private var mRetainedBytes = 0L
+
+    private val mHits = AtomicLong()
+    private val mMisses = AtomicLong()
+
+    @Volatile
+    private var mMaxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES
+
+    @get:ScriptInterface
+    @set:ScriptInterface
+    var maxRetainedBytes: Long
+        get() = mMaxRetainedBytes
+        set(value) {
+            mMaxRetainedBytes = value.coerceAtLeast(0L)
+            synchronized(this) { trimTo(mMaxRetainedBytes) }
+        }
+
+    @get:ScriptInterface
+    val hits
+        get() = mHits.get()
+
+    @get:ScriptInterface
+    val misses
+        get() = mMisses.get()
+
+    @get:ScriptInterface
+    val retainedBytes
+        get() = synchronized(this) { mRetainedBytes }
+
+    @JvmStatic
+    fun acquireBitmap(width: Int, height: Int): Bitmap {
+        val bitmap = poll(Key(width, height, Bitmap.Config.ARGB_8888.ordinal, true)) as Bitmap?
+        return bitmap ?: Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+    }
+
+    @JvmStatic
+    fun acquireMat(rows: Int, cols: Int, type: Int): Mat {
+        return poll(Key(cols, rows, type, false)) as Mat? ?: Mat(rows, cols, type)
+    }
+
+    @JvmStatic
+    fun release(bitmap: Bitmap?) {
+        bitmap ?: return
+        if (bitmap.isRecycled) {
+            return
+        }
+        if (!bitmap.isMutable || bitmap.config != Bitmap.Config.ARGB_8888) {
+            bitmap.recycle()
+            return
+        }
+        offer(Key(bitmap.width, bitmap.height, Bitmap.Config.ARGB_8888.ordinal, true), bitmap, bitmap.allocationByteCount.toLong())
+    }
+
+    @JvmStatic
+    fun release(mat: Mat?) {
+        mat ?: return
+        if (mat.empty() || mat.isSubmatrix || !mat.isContinuous) {
+            OpenCVHelper.release(mat)
+            return
+        }
+        offer(Key(mat.cols(), mat.rows(), mat.type(), false), mat, mat.total() * mat.elemSize())
+    }
+
+    @JvmStatic
+    @ScriptInterface
+    @Synchronized
+    fun clear() = trimTo(0L)
+
+    @Synchronized
+    private fun poll(key: Key): Any? {
+        val buffer = mBuffers[key]?.removeLastOrNull()
+        if (buffer == null) {
+            mMisses.incrementAndGet()
+            return null
+        }
+        mRetainedBytes -= sizeOf(buffer)
+        mHits.incrementAndGet()
+        return buffer
+    }
+
+    @Synchronized
+    private fun offer(key: Key, buffer: Any, bytes: Long) {
+        if (bytes > mMaxRetainedBytes) {
+            free(buffer)
+            return
+        }
+        mBuffers.getOrPut(key) { ArrayDeque() }.addLast(buffer)
+        mRetainedBytes += bytes
+        trimTo(mMaxRetainedBytes)
+    }
+
+    private fun trimTo(maxBytes: Long) {
+        val iterator = mBuffers.values.iterator()
+        while (mRetainedBytes > maxBytes && iterator.hasNext()) {
+            val deque = iterator.next()
+            while (mRetainedBytes > maxBytes && deque.isNotEmpty()) {
+                val buffer = deque.removeFirst()
+                mRetainedBytes -= sizeOf(buffer)
+                free(buffer)
+            }
+            if (deque.isEmpty()) {
+                iterator.remove()
+            }
+        }
+        if (maxBytes == 0L) {
+            Log.d(TAG, "cleared, hits: ${mHits.get()}, misses: ${mMisses.get()}")
+        }
+    }
+
+    private fun sizeOf(buffer: Any) = when (buffer) {
+        is Bitmap -> buffer.allocationByteCount.toLong()
+        is Mat -> buffer.total() * buffer.elemSize()
+        else -> 0L
+    }
+
+    private fun free(buffer: Any) = when (buffer) {
+        is Bitmap -> buffer.recycle()
+        is Mat -> OpenCVHelper.release(buffer)
+        else -> Unit
+    }
+
+}
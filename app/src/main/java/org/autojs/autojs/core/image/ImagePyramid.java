@@ -0,0 +1,76 @@
+package org.autojs.autojs.core.image;
+
+import org.autojs.autojs.core.opencv.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazily built image pyramid used by {@link TemplateMatching}.
+ * <p>
+ * Level 0 is the base mat itself (not owned by the pyramid),
+ * level n is the base mat scaled down by 2^n, built once and kept until {@link #release()}.
+ */
+public class ImagePyramid {
+
+    private final Mat mBase;
+    private final List<Mat> mLevels = new ArrayList<>();
+    private boolean mIsReleased = false;
+
+    public ImagePyramid(Mat base) {
+        mBase = base;
+        mLevels.add(base);
+    }
+
+    public Mat getBase() {
+        return mBase;
+    }
+
+    public synchronized Mat getLevel(int level) {
+        if (mIsReleased) {
+            throw new IllegalStateException("Image pyramid has been released");
+        }
+        while (mLevels.size() <= level) {
+            mLevels.add(pyramidDown(mBase, mLevels.size()));
+        }
+        return mLevels.get(level);
+    }
+
+    /**
+     * Build all levels up to (and including) the given one in advance.
+     */
+    public ImagePyramid prepare(int maxLevel) {
+        getLevel(maxLevel);
+        return this;
+    }
+
+    public synchronized int getBuiltLevels() {
+        return mLevels.size();
+    }
+
+    public synchronized void release() {
+        if (mIsReleased) {
+            return;
+        }
+        for (int i = 1; i < mLevels.size(); i++) {
+            ImageBufferPool.release(mLevels.get(i));
+        }
+        mLevels.clear();
+        mIsReleased = true;
+    }
+
+    private static Mat pyramidDown(Mat m, int level) {
+        int cols = m.cols();
+        int rows = m.rows();
+        for (int i = 0; i < level; i++) {
+            cols = (cols + 1) / 2;
+            rows = (rows + 1) / 2;
+        }
+        Mat r = ImageBufferPool.acquireMat(rows, cols, m.type());
+        Imgproc.resize(m, r, new Size(cols, rows));
+        return r;
+    }
+
+}
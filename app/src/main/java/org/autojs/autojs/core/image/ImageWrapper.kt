@@ -1,7 +1,12 @@
 package org.autojs.autojs.core.image
 
 import android.graphics.Bitmap
+import android.graphics.Canvas
 import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.PorterDuff
+import android.graphics.PorterDuffXfermode
+import android.graphics.Rect
 import android.media.Image
 import org.autojs.autojs.AutoJs.Companion.instance
 import org.autojs.autojs.annotation.ScriptInterface
@@ -11,6 +16,7 @@ import org.autojs.autojs.pio.UncheckedIOException
 import org.autojs.autojs.util.StringUtils.str
 import org.autojs.autojs6.R
 import org.opencv.android.Utils
+import org.opencv.core.CvType
 import org.opencv.core.Size
 import org.opencv.imgcodecs.Imgcodecs
 import java.io.FileNotFoundException
@@ -35,6 +41,14 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
     private val mScriptRuntime = instance.runtime
     private var mIsRecycled = false
     private var mIsOneShot = false
+    private var mIsBitmapPooled = false
+    private var mIsMatPooled = false
+
+    // Buffers handed out by the public getters may be kept by scripts after the image is recycled,
+    // so they are freed instead of being returned to the pool, where the next image would reuse them silently.
+    private var mIsBitmapEscaped = false
+    private var mIsMatEscaped = false
+    private val mPyramids = HashMap<Rect?, ImagePyramid>()
 
     constructor(mat: Mat) : this(null, mat)
 
@@ -71,25 +85,58 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
         get() = Size(mWidth.toDouble(), mHeight.toDouble()).also { ensureNotRecycled() }
 
     val bitmap: Bitmap
+        get() = bitmapInternal.also { mIsBitmapEscaped = true }
+
+    val bitmapIfPresent: Bitmap?
+        get() = mBitmap.also {
+            ensureNotRecycled()
+            if (it != null) mIsBitmapEscaped = true
+        }
+
+    val mat: Mat
+        get() = matInternal.also { mIsMatEscaped = true }
+
+    private val bitmapInternal: Bitmap
         get() {
             ensureNotRecycled()
             if (mBitmap == null && mMat != null) {
-                mBitmap = Bitmap.createBitmap(mMat!!.width(), mMat!!.height(), Bitmap.Config.ARGB_8888)
+                mBitmap = ImageBufferPool.acquireBitmap(mMat!!.width(), mMat!!.height())
+                mIsBitmapPooled = true
                 Utils.matToBitmap(mMat, mBitmap)
             }
             return mBitmap!!
         }
 
-    val mat: Mat
+    private val matInternal: Mat
         get() {
             ensureNotRecycled()
             if (mMat == null && mBitmap != null) {
-                mMat = Mat()
+                mMat = ImageBufferPool.acquireMat(mBitmap!!.height, mBitmap!!.width, CvType.CV_8UC4)
+                mIsMatPooled = true
                 Utils.bitmapToMat(mBitmap, mMat)
             }
             return mMat!!
         }
 
+    /**
+     * Get the cached pyramid of the whole image or a region of it,
+     * which lets repeated template matching on the same image build each level only once.
+     * Pixels of the image should not be modified after the pyramid is built.
+     */
+    fun getPyramid(region: org.opencv.core.Rect?): ImagePyramid = synchronized(mPyramids) {
+        ensureNotRecycled()
+        val key = region?.let { Rect(it.x, it.y, it.x + it.width, it.y + it.height) }
+        mPyramids.getOrPut(key) { ImagePyramid(if (region == null) matInternal else Mat(matInternal, region)) }
+    }
+
+    private fun releasePyramids() = synchronized(mPyramids) {
+        mPyramids.forEach { (region, pyramid) ->
+            pyramid.release()
+            if (region != null) OpenCVHelper.release(pyramid.base)
+        }
+        mPyramids.clear()
+    }
+
     private fun addToList(image: Any) {
         imageList.add(WeakReference(image))
     }
@@ -113,15 +160,22 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
         val result = if (mBitmap != null) {
             mBitmap!!.getPixel(x, y)
         } else {
-            val channels = mat[x, y]
+            val channels = matInternal[x, y]
             Color.argb(channels[3].toInt(), channels[0].toInt(), channels[1].toInt(), channels[2].toInt())
         }
         return result
     }
 
     override fun recycle() {
-        mBitmap?.run { recycle().also { mBitmap = null } }
-        mMat?.run { OpenCVHelper.release(mMat).also { mMat = null } }
+        releasePyramids()
+        mBitmap?.let {
+            if (mIsBitmapPooled && !mIsBitmapEscaped) ImageBufferPool.release(it) else it.recycle()
+            mBitmap = null
+        }
+        mMat?.let {
+            if (mIsMatPooled && !mIsMatEscaped) ImageBufferPool.release(it) else OpenCVHelper.release(it)
+            mMat = null
+        }
         mIsRecycled = true
     }
 
@@ -141,11 +195,14 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
     fun clone(): ImageWrapper {
         ensureNotRecycled()
         return if (mBitmap == null) {
-            ofMat(mMat!!.clone())!!
+            ofPooledMat(copyOf(mMat!!))
         } else if (mMat == null) {
-            ofBitmap(mBitmap!!.copy(mBitmap!!.config, true))!!
+            ofPooledBitmap(copyOf(mBitmap!!))
         } else {
-            ImageWrapper(mBitmap!!.copy(mBitmap!!.config, true), mMat!!.clone())
+            ImageWrapper(copyOf(mBitmap!!), copyOf(mMat!!)).apply {
+                mIsBitmapPooled = true
+                mIsMatPooled = true
+            }
         }
     }
 
@@ -166,7 +223,14 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
         }
 
         @JvmStatic
-        fun ofImage(image: Image?) = image?.let { ImageWrapper(toBitmap(it)) }
+        fun ofImage(image: Image?) = image?.let { ofPooledBitmap(toBitmap(it)) }
+
+        /**
+         * Copy the first plane of an RGBA_8888 [Image] into a pooled [Mat] in one pass, which drops the row padding.
+         * The result does not depend on the image, which may be closed by the next capture.
+         */
+        @JvmStatic
+        fun ofImageAsMat(image: Image?) = image?.let { ofPooledMat(toMat(it)) }
 
         @JvmStatic
         fun ofMat(mat: Mat?) = mat?.let { ImageWrapper(it) }
@@ -174,20 +238,62 @@ class ImageWrapper(bitmap: Bitmap?, mat: Mat?) : Recyclable {
         @JvmStatic
         fun ofBitmap(bitmap: Bitmap?) = bitmap?.let { ImageWrapper(it) }
 
+        /**
+         * Wrap a bitmap acquired from [ImageBufferPool], which will be returned to the pool on [recycle]
+         * unless it has been handed out by [bitmap].
+         */
+        @JvmStatic
+        fun ofPooledBitmap(bitmap: Bitmap) = ImageWrapper(bitmap).apply { mIsBitmapPooled = true }
+
+        /**
+         * Wrap a mat acquired from [ImageBufferPool], which will be returned to the pool on [recycle]
+         * unless it has been handed out by [mat].
+         */
+        @JvmStatic
+        fun ofPooledMat(mat: Mat) = ImageWrapper(mat).apply { mIsMatPooled = true }
+
+        /**
+         * Copy the region of [src] into a bitmap acquired from [ImageBufferPool].
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun copyOf(src: Bitmap, x: Int = 0, y: Int = 0, width: Int = src.width, height: Int = src.height): Bitmap {
+            require(x >= 0 && y >= 0 && width > 0 && height > 0 && x + width <= src.width && y + height <= src.height) {
+                "Region [$x, $y, $width, $height] is out of the bitmap bounds [${src.width}, ${src.height}]"
+            }
+            return ImageBufferPool.acquireBitmap(width, height).also {
+                Canvas(it).drawBitmap(src, Rect(x, y, x + width, y + height), Rect(0, 0, width, height), sCopyPaint)
+            }
+        }
+
+        private fun copyOf(src: Mat) = ImageBufferPool.acquireMat(src.rows(), src.cols(), src.type()).also { src.copyTo(it) }
+
+        private val sCopyPaint = Paint().apply { xfermode = PorterDuffXfermode(PorterDuff.Mode.SRC) }
+
         @ScriptInterface
         fun toBitmap(image: Image): Bitmap {
             val plane = image.planes[0]
             val buffer = plane.buffer.apply { position(0) }
             val pixelStride = plane.pixelStride
             val rowPadding = plane.rowStride - pixelStride * image.width
-            val bitmap = Bitmap.createBitmap(
+            val bitmap = ImageBufferPool.acquireBitmap(
                 image.width + rowPadding / pixelStride,
                 image.height,
-                Bitmap.Config.ARGB_8888,
             ).apply { copyPixelsFromBuffer(buffer) }
             return when (rowPadding == 0) {
                 true -> bitmap
-                else -> Bitmap.createBitmap(bitmap, 0, 0, image.width, image.height)
+                else -> copyOf(bitmap, 0, 0, image.width, image.height).also { ImageBufferPool.release(bitmap) }
+            }
+        }
+
+        fun toMat(image: Image): Mat {
+            val plane = image.planes[0]
+            val buffer = plane.buffer.apply { position(0) }
+            val view = org.opencv.core.Mat(image.height, image.width, CvType.CV_8UC4, buffer, plane.rowStride.toLong())
+            return try {
+                ImageBufferPool.acquireMat(image.height, image.width, CvType.CV_8UC4).also { view.copyTo(it) }
+            } finally {
+                view.release()
             }
         }
 
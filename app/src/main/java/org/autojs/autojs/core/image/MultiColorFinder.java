@@ -0,0 +1,202 @@
+package org.autojs.autojs.core.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.autojs.autojs.core.opencv.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass multi-color matcher working on the raw RGB(A) buffer of an image.
+ * <p>
+ * The pixels are fetched only once (one JNI call), every offset of the path is
+ * compiled into a byte offset plus per-channel bounds, and the candidate area is
+ * shrunk in advance so that no per-pixel boundary check is needed while scanning.
+ */
+public class MultiColorFinder {
+
+    private final int mFirstR, mFirstG, mFirstB;
+    private final int mThreshold;
+
+    private final int[] mDx, mDy;
+    private final int[] mR, mG, mB;
+
+    private final int mMinDx, mMaxDx, mMinDy, mMaxDy;
+
+    /**
+     * @param firstColor color of the starting point
+     * @param threshold  tolerance of each channel for the starting point,
+     *                   and mean absolute difference of RGB for other points
+     * @param points     flat array of <code>[ x, y, color, x, y, color, ... ]</code> relative to the starting point
+     */
+    public MultiColorFinder(int firstColor, int threshold, int[] points) {
+        mFirstR = Color.red(firstColor);
+        mFirstG = Color.green(firstColor);
+        mFirstB = Color.blue(firstColor);
+        mThreshold = threshold;
+
+        int count = points == null ? 0 : points.length / 3;
+        mDx = new int[count];
+        mDy = new int[count];
+        mR = new int[count];
+        mG = new int[count];
+        mB = new int[count];
+
+        int minDx = 0, maxDx = 0, minDy = 0, maxDy = 0;
+        for (int i = 0; i < count; i += 1) {
+            int dx = points[i * 3];
+            int dy = points[i * 3 + 1];
+            int color = points[i * 3 + 2];
+            mDx[i] = dx;
+            mDy[i] = dy;
+            mR[i] = Color.red(color);
+            mG[i] = Color.green(color);
+            mB[i] = Color.blue(color);
+            minDx = Math.min(minDx, dx);
+            maxDx = Math.max(maxDx, dx);
+            minDy = Math.min(minDy, dy);
+            maxDy = Math.max(maxDy, dy);
+        }
+        mMinDx = minDx;
+        mMaxDx = maxDx;
+        mMinDy = minDy;
+        mMaxDy = maxDy;
+    }
+
+    /**
+     * @return the first matched starting point (row-major order) in image coordinates, or null
+     */
+    public Point findFirst(ImageWrapper image, Rect rect) {
+        List<Point> result = find(image, rect, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * @param limit max count of points to collect, no limit if not positive
+     * @return matched starting points (row-major order) in image coordinates
+     */
+    public List<Point> findAll(ImageWrapper image, Rect rect, int limit) {
+        return find(image, rect, limit);
+    }
+
+    private List<Point> find(ImageWrapper image, Rect rect, int limit) {
+        List<Point> result = new ArrayList<>();
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int left = 0, top = 0, right = width, bottom = height;
+        if (rect != null) {
+            left = Math.max(0, rect.x);
+            top = Math.max(0, rect.y);
+            right = Math.min(width, rect.x + rect.width);
+            bottom = Math.min(height, rect.y + rect.height);
+        }
+
+        // Starting points which make any offset fall outside the image never match.
+        left = Math.max(left, -mMinDx);
+        top = Math.max(top, -mMinDy);
+        right = Math.min(right, width - mMaxDx);
+        bottom = Math.min(bottom, height - mMaxDy);
+        if (left >= right || top >= bottom) {
+            return result;
+        }
+
+        PixelBuffer buffer = PixelBuffer.of(image);
+        byte[] data = buffer.data;
+        int channels = buffer.channels;
+        int stride = buffer.stride;
+
+        int count = mDx.length;
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i += 1) {
+            offsets[i] = mDy[i] * stride + mDx[i] * channels;
+        }
+        int maxDiff = mThreshold * 3;
+
+        for (int y = top; y < bottom; y += 1) {
+            int rowIndex = y * stride;
+            for (int x = left; x < right; x += 1) {
+                int index = rowIndex + x * channels;
+                if (Math.abs((data[index] & 0xff) - mFirstR) > mThreshold
+                        || Math.abs((data[index + 1] & 0xff) - mFirstG) > mThreshold
+                        || Math.abs((data[index + 2] & 0xff) - mFirstB) > mThreshold) {
+                    continue;
+                }
+                if (matchesPath(data, index, offsets, maxDiff)) {
+                    result.add(new Point(x, y));
+                    if (limit > 0 && result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean matchesPath(byte[] data, int base, int[] offsets, int maxDiff) {
+        for (int i = 0; i < offsets.length; i += 1) {
+            int index = base + offsets[i];
+            int diff = Math.abs((data[index] & 0xff) - mR[i]);
+            if (diff > maxDiff) {
+                return false;
+            }
+            diff += Math.abs((data[index + 1] & 0xff) - mG[i]);
+            if (diff > maxDiff) {
+                return false;
+            }
+            diff += Math.abs((data[index + 2] & 0xff) - mB[i]);
+            if (diff > maxDiff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class PixelBuffer {
+
+        final byte[] data;
+        final int channels;
+        final int stride;
+
+        private PixelBuffer(byte[] data, int channels, int stride) {
+            this.data = data;
+            this.channels = channels;
+            this.stride = stride;
+        }
+
+        static PixelBuffer of(ImageWrapper image) {
+            Bitmap bitmap = image.getBitmapIfPresent();
+            if (bitmap != null && bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                // @Hint ARGB_8888 is stored as R, G, B, A bytes in memory.
+                byte[] data = new byte[bitmap.getRowBytes() * bitmap.getHeight()];
+                bitmap.copyPixelsToBuffer(ByteBuffer.wrap(data));
+                return new PixelBuffer(data, 4, bitmap.getRowBytes());
+            }
+            Mat mat = image.getMat();
+            int channels = mat.channels();
+            if (channels < 3) {
+                throw new IllegalArgumentException("Image with " + channels + " channel(s) is not supported for color finding");
+            }
+            int stride = mat.cols() * channels;
+            byte[] data = new byte[stride * mat.rows()];
+            if (mat.isContinuous()) {
+                mat.get(0, 0, data);
+            } else {
+                byte[] row = new byte[stride];
+                for (int y = 0; y < mat.rows(); y += 1) {
+                    mat.get(y, 0, row);
+                    System.arraycopy(row, 0, data, y * stride, stride);
+                }
+            }
+            return new PixelBuffer(data, channels, stride);
+        }
+
+    }
+
+}
@@ -12,7 +12,6 @@ import org.opencv.core.CvType;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
@@ -45,6 +44,7 @@ public class TemplateMatching {
     private static final String LOG_TAG = "TemplateMatching";
 
     public static final int MAX_LEVEL_AUTO = -1;
+    public static final int MAX_LEVEL = 6;
     public static final int MATCHING_METHOD_DEFAULT = Imgproc.TM_CCOEFF_NORMED;
 
     public static Point fastTemplateMatching(Mat img, Mat template, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel) {
@@ -66,10 +66,26 @@ public class TemplateMatching {
      * @param maxLevel        图像金字塔的层数
      */
     public static List<Match> fastTemplateMatching(Mat img, Mat template, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel, int limit) {
+        ImagePyramid imgPyramid = new ImagePyramid(img);
+        ImagePyramid templatePyramid = new ImagePyramid(template);
+        try {
+            return fastTemplateMatching(imgPyramid, templatePyramid, matchMethod, weakThreshold, strictThreshold, maxLevel, limit);
+        } finally {
+            imgPyramid.release();
+            templatePyramid.release();
+        }
+    }
+
+    /**
+     * 采用图像金字塔算法快速找图, 金字塔各层由调用方缓存 (如同一帧图像匹配多个模板)
+     *
+     * @see #fastTemplateMatching(Mat, Mat, int, float, float, int, int)
+     */
+    public static List<Match> fastTemplateMatching(ImagePyramid imgPyramid, ImagePyramid templatePyramid, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel, int limit) {
         TimingLogger logger = new TimingLogger(LOG_TAG, "fast_tm");
         if (maxLevel == MAX_LEVEL_AUTO) {
             //自动选取金字塔层数
-            maxLevel = selectPyramidLevel(img, template);
+            maxLevel = selectPyramidLevel(imgPyramid.getBase(), templatePyramid.getBase());
             logger.addSplit("selectPyramidLevel:" + maxLevel);
         }
         //保存每一轮匹配到模板图片在原图片的位置
@@ -79,19 +95,17 @@ public class TemplateMatching {
         for (int level = maxLevel; level >= 0; level--) {
             // 放缩图片
             List<Match> currentMatchResult = new ArrayList<>();
-            Mat src = getPyramidDownAtLevel(img, level);
-            Mat currentTemplate = getPyramidDownAtLevel(template, level);
+            Mat src = imgPyramid.getLevel(level);
+            Mat currentTemplate = templatePyramid.getLevel(level);
             // 如果在上一轮中没有匹配到图片，则考虑是否退出匹配
             if (previousMatchResult.isEmpty()) {
                 // 如果不是第一次匹配，并且不满足shouldContinueMatching的条件，则直接退出匹配
                 if (!isFirstMatching && !shouldContinueMatching(level, maxLevel)) {
-                    releaseIfNeeded(src, img);
-                    releaseIfNeeded(currentTemplate, template);
                     break;
                 }
                 Mat matchResult = matchTemplate(src, currentTemplate, matchMethod);
                 getBestMatched(matchResult, currentTemplate, matchMethod, weakThreshold, currentMatchResult, limit, null);
-                OpenCVHelper.release(matchResult);
+                ImageBufferPool.release(matchResult);
             } else {
                 for (Match match : previousMatchResult) {
                     // 根据上一轮的匹配点，计算本次匹配的区域
@@ -100,13 +114,10 @@ public class TemplateMatching {
                     Mat matchResult = matchTemplate(m, currentTemplate, matchMethod);
                     getBestMatched(matchResult, currentTemplate, matchMethod, weakThreshold, currentMatchResult, limit, r);
                     OpenCVHelper.release(m);
-                    OpenCVHelper.release(matchResult);
+                    ImageBufferPool.release(matchResult);
                 }
             }
 
-            releaseIfNeeded(src, img);
-            releaseIfNeeded(currentTemplate, template);
-
             logger.addSplit("level:" + level + ", result:" + previousMatchResult);
 
             // 把满足强阈值的点找出来，加到最终结果列表
@@ -133,27 +144,6 @@ public class TemplateMatching {
         return finalMatchResult;
     }
 
-    private static void releaseIfNeeded(Mat src, Mat ref) {
-        if (src != ref) {
-            OpenCVHelper.release(src);
-        }
-    }
-
-    private static Mat getPyramidDownAtLevel(Mat m, int level) {
-        if (level == 0) {
-            return m;
-        }
-        int cols = m.cols();
-        int rows = m.rows();
-        for (int i = 0; i < level; i++) {
-            cols = (cols + 1) / 2;
-            rows = (rows + 1) / 2;
-        }
-        Mat r = new Mat(rows, cols, m.type());
-        Imgproc.resize(m, r, new Size(cols, rows));
-        return r;
-    }
-
     private static void pyrUp(Point p, int level) {
         for (int i = 0; i < level; i++) {
             p.x *= 2;
@@ -187,7 +177,7 @@ public class TemplateMatching {
         return new Rect(x, y, w, h);
     }
 
-    private static int selectPyramidLevel(Mat img, Mat template) {
+    static int selectPyramidLevel(Mat img, Mat template) {
         int minDim = MathUtils.min(img.rows(), img.cols(), template.rows(), template.cols());
         //这里选取16为图像缩小后的最小宽高，从而用log(2, minDim / 16)得到最多可以经过几次缩小。
         int maxLevel = (int) (Math.log(minDim >> 4) / Math.log(2));
@@ -195,14 +185,14 @@ public class TemplateMatching {
             return 0;
         }
         //上限为6
-        return Math.min(6, maxLevel);
+        return Math.min(MAX_LEVEL, maxLevel);
     }
 
 
     private static Mat matchTemplate(Mat img, Mat temp, int match_method) {
         int result_cols = img.cols() - temp.cols() + 1;
         int result_rows = img.rows() - temp.rows() + 1;
-        Mat result = new Mat(result_rows, result_cols, CvType.CV_32FC1);
+        Mat result = ImageBufferPool.acquireMat(result_rows, result_cols, CvType.CV_32FC1);
         Imgproc.matchTemplate(img, temp, result, match_method);
         return result;
     }
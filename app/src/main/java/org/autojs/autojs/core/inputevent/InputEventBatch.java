@@ -0,0 +1,98 @@
+package org.autojs.autojs.core.inputevent;
+
+import static org.autojs.autojs.core.inputevent.InputEventCodes.ABS_MT_POSITION_X;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.ABS_MT_POSITION_Y;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.EV_ABS;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.EV_SYN;
+import static org.autojs.autojs.core.inputevent.InputEventCodes.SYN_REPORT;
+
+import org.autojs.autojs.engine.RootAutomatorEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Input events and the sleeps between them, buffered in the records of an .auto file,
+ * which the root automator executable replays with the sleeps taken on the device side.
+ * <p>
+ * Touch positions are written as screen coordinates and scaled by the executable
+ * from the screen size in the file header to the touch device.
+ * </p>
+ */
+public class InputEventBatch {
+
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream(4096);
+    private final DataOutputStream mData = new DataOutputStream(mBuffer);
+    private final int mScreenWidth;
+    private final int mScreenHeight;
+    private int mRecordCount;
+
+    public InputEventBatch(int screenWidth, int screenHeight) {
+        mScreenWidth = screenWidth;
+        mScreenHeight = screenHeight;
+    }
+
+    public void addEvent(int type, int code, int value) {
+        try {
+            if (type == EV_ABS && (code == ABS_MT_POSITION_X || code == ABS_MT_POSITION_Y)) {
+                mData.writeByte(code == ABS_MT_POSITION_X ? RootAutomator.DATA_TYPE_EVENT_TOUCH_X : RootAutomator.DATA_TYPE_EVENT_TOUCH_Y);
+                mData.writeInt(value);
+            } else if (type == EV_SYN && code == SYN_REPORT && value == 0) {
+                mData.writeByte(RootAutomator.DATA_TYPE_EVENT_SYNC_REPORT);
+            } else {
+                mData.writeByte(RootAutomator.DATA_TYPE_EVENT);
+                mData.writeShort(type);
+                mData.writeShort(code);
+                mData.writeInt(value);
+            }
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream.
+            throw new AssertionError(e);
+        }
+        mRecordCount++;
+    }
+
+    public void addSleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            mData.writeByte(RootAutomator.DATA_TYPE_SLEEP);
+            mData.writeInt((int) Math.min(millis, Integer.MAX_VALUE));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        mRecordCount++;
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    public boolean isEmpty() {
+        return mRecordCount == 0;
+    }
+
+    public void clear() {
+        mBuffer.reset();
+        mRecordCount = 0;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        RootAutomatorEngine.writeFileHeader(data, mScreenWidth, mScreenHeight);
+        mBuffer.writeTo(data);
+        data.flush();
+    }
+
+    public void writeTo(File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            writeTo(out);
+        }
+    }
+
+}
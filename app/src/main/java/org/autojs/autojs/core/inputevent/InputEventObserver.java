@@ -3,6 +3,7 @@ package org.autojs.autojs.core.inputevent;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import android.text.TextUtils;
 
@@ -10,57 +11,110 @@ import org.autojs.autojs6.R;
 import org.autojs.autojs.core.record.inputevent.EventFormatException;
 import org.autojs.autojs.runtime.api.Shell;
 
+import java.util.Locale;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by Stardust on 2017/8/4.
+ * <p>
+ * Lines of the shell are parsed into a ring of reused events on the shell thread,
+ * and dispatched to listeners on a thread of their own, so that slow listeners do not hold up reading.
+ * </p>
  */
 public class InputEventObserver {
 
+    /**
+     * An event of <code>getevent -t</code>. Events dispatched to listeners are reused for later events,
+     * so listeners must {@link #copy()} what they want to keep.
+     * <p>
+     * Values are kept as numbers, and the strings scripts used to read as <code>time</code>, <code>device</code>,
+     * <code>type</code>, <code>code</code> and <code>value</code> are made by their getters only when read.
+     * </p>
+     */
     public static class InputEvent {
-        static final Pattern PATTERN = Pattern.compile("^\\[([^]]*)]\\s+([^:]*):\\s+([^\\s]*)\\s+([^\\s]*)\\s+([^\\s]*)\\s*$");
+
+        private static final String DEVICE_PATH_PREFIX = "/dev/input/event";
 
         static InputEvent parse(String eventStr) {
-            Matcher matcher = PATTERN.matcher(eventStr);
-            if (!matcher.matches()) {
+            InputEvent event = new InputEvent();
+            if (!InputEventParser.parse(eventStr, event)) {
                 throw new EventFormatException(eventStr);
             }
-            double time;
-            try {
-                time = Double.parseDouble(matcher.group(1));
-            } catch (NumberFormatException e) {
-                throw new EventFormatException(eventStr, e);
-            }
-            return new InputEvent(time, matcher.group(2), matcher.group(3), matcher.group(4), matcher.group(5));
+            return event;
+        }
+
+        /**
+         * Time since boot in microseconds.
+         */
+        public long timeMicros;
+        /**
+         * Number of the device, like 2 of /dev/input/event2, or -1 if unknown.
+         */
+        public int deviceNumber;
+        public int eventType;
+        public int eventCode;
+        public int eventValue;
+
+        public InputEvent() {
+        }
+
+        public InputEvent(long timeMicros, int deviceNumber, int eventType, int eventCode, int eventValue) {
+            this.timeMicros = timeMicros;
+            this.deviceNumber = deviceNumber;
+            this.eventType = eventType;
+            this.eventCode = eventCode;
+            this.eventValue = eventValue;
+        }
+
+        /**
+         * Time since boot in seconds.
+         */
+        public double getTime() {
+            return timeMicros / 1e6;
         }
 
+        /**
+         * Path of the device, like /dev/input/event2, or null if unknown.
+         */
+        @Nullable
+        public String getDevice() {
+            return deviceNumber < 0 ? null : DEVICE_PATH_PREFIX + deviceNumber;
+        }
+
+        /**
+         * Type in hex as printed by getevent, like 0003.
+         */
+        public String getType() {
+            return String.format(Locale.ROOT, "%04x", eventType);
+        }
 
-        public double time;
-        public String device;
-        public String type;
-        public String code;
-        public String value;
+        /**
+         * Code in hex as printed by getevent, like 0035.
+         */
+        public String getCode() {
+            return String.format(Locale.ROOT, "%04x", eventCode);
+        }
 
-        public InputEvent(double time, String device, String type, String code, String value) {
-            this.time = time;
-            this.device = device;
-            this.type = type;
-            this.code = code;
-            this.value = value;
+        /**
+         * Value in hex as printed by getevent, like 000001a4.
+         */
+        public String getValue() {
+            return String.format(Locale.ROOT, "%08x", eventValue);
         }
 
+        public InputEvent copy() {
+            return new InputEvent(timeMicros, deviceNumber, eventType, eventCode, eventValue);
+        }
 
         @NonNull
         @Override
         public String toString() {
             return "Event{" +
-                    "time=" + time +
-                    ", device='" + device + '\'' +
-                    ", type='" + type + '\'' +
-                    ", code='" + code + '\'' +
-                    ", value='" + value + '\'' +
+                    "time=" + getTime() +
+                    ", device='" + getDevice() + '\'' +
+                    ", type='" + getType() + '\'' +
+                    ", code='" + getCode() + '\'' +
+                    ", value='" + getValue() + '\'' +
                     '}';
         }
     }
@@ -69,9 +123,13 @@ public class InputEventObserver {
         void onInputEvent(@NonNull InputEvent e);
     }
 
+    private static final int EVENT_BUFFER_CAPACITY = 1024;
+
     private final CopyOnWriteArrayList<InputEventListener> mInputEventListeners = new CopyOnWriteArrayList<>();
+    private final InputEventRingBuffer mEventBuffer = new InputEventRingBuffer(EVENT_BUFFER_CAPACITY);
     private final Context mContext;
     private Shell mShell;
+    private Thread mDispatcherThread;
 
     public InputEventObserver(Context context) {
         mContext = context;
@@ -88,6 +146,9 @@ public class InputEventObserver {
             throw new IllegalStateException(mContext
                     .getString(R.string.error_function_called_more_than_once,
                             "InputEventObserver.observe"));
+        mDispatcherThread = new Thread(this::dispatchInputEvents, "InputEventDispatcher");
+        mDispatcherThread.setDaemon(true);
+        mDispatcherThread.start();
         mShell = new Shell(mContext, true);
         mShell.setCallback(new Shell.SimpleCallback() {
             @Override
@@ -105,20 +166,40 @@ public class InputEventObserver {
         });
     }
 
+    /**
+     * Parse a line of the shell and queue the event for listeners. It must be called on one thread only.
+     */
     public void onInputEvent(String eventStr) {
         if (TextUtils.isEmpty(eventStr) || !eventStr.startsWith("["))
             return;
-        try {
-            InputEvent event = InputEvent.parse(eventStr);
-            dispatchInputEvent(event);
-        } catch (Exception ignored) {
+        InputEvent event = mEventBuffer.claim();
+        if (InputEventParser.parse(eventStr, event)) {
+            mEventBuffer.publish();
+        }
+    }
 
+    private void dispatchInputEvents() {
+        try {
+            while (true) {
+                InputEvent event = mEventBuffer.take();
+                try {
+                    dispatchInputEvent(event);
+                } finally {
+                    mEventBuffer.release();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // Recycled.
         }
     }
 
     private void dispatchInputEvent(InputEvent event) {
         for (InputEventListener listener : mInputEventListeners) {
-            listener.onInputEvent(event);
+            try {
+                listener.onInputEvent(event);
+            } catch (Exception ignored) {
+
+            }
         }
     }
 
@@ -133,6 +214,8 @@ public class InputEventObserver {
 
     public void recycle() {
         mShell.exit();
+        mEventBuffer.close();
+        mDispatcherThread.interrupt();
     }
 
 
@@ -0,0 +1,116 @@
+package org.autojs.autojs.core.inputevent;
+
+/**
+ * Parser of lines printed by <code>getevent -t</code>, like <code>[   74813.468474] /dev/input/event2: 0003 0035 000001a4</code>,
+ * which fills an existing {@link InputEventObserver.InputEvent} without allocating anything.
+ */
+public final class InputEventParser {
+
+    private static final int MICROS_DIGITS = 6;
+
+    private InputEventParser() {
+    }
+
+    /**
+     * Parse the line into the event.
+     *
+     * @return false if the line is not an event, in which case the event is left partly filled
+     */
+    public static boolean parse(CharSequence line, InputEventObserver.InputEvent event) {
+        int length = line.length();
+        if (length == 0 || line.charAt(0) != '[') {
+            return false;
+        }
+        int i = skipSpaces(line, 1);
+        int start = i;
+        long seconds = 0;
+        while (i < length && isDigit(line.charAt(i))) {
+            seconds = seconds * 10 + line.charAt(i++) - '0';
+        }
+        if (i == start) {
+            return false;
+        }
+        long micros = 0;
+        if (i < length && line.charAt(i) == '.') {
+            i++;
+            int digits = 0;
+            while (i < length && isDigit(line.charAt(i))) {
+                if (digits < MICROS_DIGITS) {
+                    micros = micros * 10 + line.charAt(i) - '0';
+                    digits++;
+                }
+                i++;
+            }
+            for (; digits < MICROS_DIGITS; digits++) {
+                micros *= 10;
+            }
+        }
+        i = skipSpaces(line, i);
+        if (i >= length || line.charAt(i) != ']') {
+            return false;
+        }
+        i = skipSpaces(line, i + 1);
+        // The device id is the number the device name ends with, like 2 of /dev/input/event2.
+        int device = -1;
+        while (i < length && line.charAt(i) != ':') {
+            char c = line.charAt(i++);
+            device = isDigit(c) ? Math.max(device, 0) * 10 + c - '0' : -1;
+        }
+        if (i >= length) {
+            return false;
+        }
+        long type = parseHex(line, i + 1);
+        if (type < 0) {
+            return false;
+        }
+        long code = parseHex(line, (int) (type >>> 32));
+        if (code < 0) {
+            return false;
+        }
+        long value = parseHex(line, (int) (code >>> 32));
+        if (value < 0 || skipSpaces(line, (int) (value >>> 32)) != length) {
+            return false;
+        }
+        event.timeMicros = seconds * 1000000 + micros;
+        event.deviceNumber = device;
+        event.eventType = (int) type;
+        event.eventCode = (int) code;
+        event.eventValue = (int) value;
+        return true;
+    }
+
+    /**
+     * Parse a hex number of up to 8 digits after spaces.
+     *
+     * @return the index after the number in the high 32 bits and the number in the low 32 bits, or -1 if there is no number
+     */
+    private static long parseHex(CharSequence s, int i) {
+        i = skipSpaces(s, i);
+        int start = i;
+        long value = 0;
+        while (i < s.length()) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                break;
+            }
+            value = value << 4 | digit;
+            i++;
+        }
+        if (i == start || i - start > 8) {
+            return -1;
+        }
+        return (long) i << 32 | value;
+    }
+
+    private static int skipSpaces(CharSequence s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.autojs.autojs.core.inputevent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed ring of reusable events between one producer thread, which parses lines into them,
+ * and one consumer thread, which hands them to listeners.
+ * <p>
+ * The producer waits while the ring is full, so that no event is dropped under a burst of touches.
+ * </p>
+ */
+final class InputEventRingBuffer {
+
+    private static final long FULL_WAIT_NANOS = 100_000;
+
+    /**
+     * Times to yield before parking while empty, as events of a touch come in bursts.
+     */
+    private static final int SPIN_TRIES = 100;
+
+    private final InputEventObserver.InputEvent[] mEvents;
+    private final int mMask;
+
+    /**
+     * Sequence of the next event to publish, written by the producer only.
+     */
+    private volatile long mWriteSequence;
+
+    /**
+     * Sequence of the next event to take, written by the consumer only.
+     */
+    private volatile long mReadSequence;
+
+    private volatile boolean mConsumerWaiting;
+    private volatile Thread mConsumer;
+    private volatile boolean mClosed;
+
+    InputEventRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        mEvents = new InputEventObserver.InputEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mEvents[i] = new InputEventObserver.InputEvent();
+        }
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Event to fill next, which is not seen by the consumer until {@link #publish()} is called.
+     * If it is not published, the same event is returned by the next call.
+     */
+    InputEventObserver.InputEvent claim() {
+        long sequence = mWriteSequence;
+        while (sequence - mReadSequence == mEvents.length && !mClosed) {
+            LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+        }
+        return mEvents[(int) (sequence & mMask)];
+    }
+
+    void publish() {
+        if (mClosed) {
+            return;
+        }
+        mWriteSequence = mWriteSequence + 1;
+        if (mConsumerWaiting) {
+            LockSupport.unpark(mConsumer);
+        }
+    }
+
+    /**
+     * Wait for the next published event, which stays valid until {@link #release()} is called.
+     */
+    InputEventObserver.InputEvent take() throws InterruptedException {
+        mConsumer = Thread.currentThread();
+        long sequence = mReadSequence;
+        for (int i = 0; i < SPIN_TRIES && sequence == mWriteSequence; i++) {
+            Thread.yield();
+        }
+        while (sequence == mWriteSequence) {
+            mConsumerWaiting = true;
+            // Check again after announcing the wait, or a publish in between would not unpark us.
+            if (sequence == mWriteSequence) {
+                LockSupport.park(this);
+            }
+            mConsumerWaiting = false;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return mEvents[(int) (sequence & mMask)];
+    }
+
+    void release() {
+        mReadSequence = mReadSequence + 1;
+    }
+
+    /**
+     * Stop publishing events, so that the producer never waits for a consumer which is gone.
+     */
+    void close() {
+        mClosed = true;
+    }
+
+    int size() {
+        return (int) (mWriteSequence - mReadSequence);
+    }
+
+}
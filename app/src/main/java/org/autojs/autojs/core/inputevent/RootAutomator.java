@@ -28,6 +28,7 @@ import org.autojs.autojs.runtime.api.ScreenMetrics;
 import org.autojs.autojs.runtime.api.Shell;
 import org.autojs.autojs.runtime.exception.ScriptInterruptedException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -48,6 +49,11 @@ public class RootAutomator implements Shell.Callback {
 
     private static final long READY_TIMEOUT = 2000;
 
+    /**
+     * Interval between moves of a swipe in a batch, where the sleeps are taken by the executable.
+     */
+    private static final int SWIPE_STEP_MILLIS = 8;
+
     @Nullable
     private ScreenMetrics mScreenMetrics;
     private final Shell mShell;
@@ -57,6 +63,8 @@ public class RootAutomator implements Shell.Callback {
     private final Object mReadyLock = new Object();
     private volatile boolean mReady = false;
     private final Context mContext;
+    @Nullable
+    private InputEventBatch mBatch;
 
     public RootAutomator(Context context, boolean waitForReady) throws IOException {
         this(context, waitForReady ? READY_TIMEOUT : -1);
@@ -70,10 +78,53 @@ public class RootAutomator implements Shell.Callback {
     }
 
     public void sendEvent(int type, int code, int value) throws IOException {
+        if (mBatch != null) {
+            mBatch.addEvent(type, code, value);
+            return;
+        }
         waitForReady(READY_TIMEOUT);
         sendEventInternal(type, code, value);
     }
 
+    /**
+     * Start buffering events instead of sending them one by one to the running executable,
+     * until {@link #endBatch()} is called. Sleeps of gestures in between are buffered too,
+     * and taken by the executable between events.
+     * <p>
+     * A batch is replayed by another process of the executable started through su,
+     * so it only pays off for gestures of many events, like a series of swipes.
+     * </p>
+     */
+    public void beginBatch() {
+        if (mBatch == null) {
+            mBatch = new InputEventBatch(ScreenMetrics.getDeviceScreenWidth(), ScreenMetrics.getDeviceScreenHeight());
+        }
+    }
+
+    public boolean isInBatch() {
+        return mBatch != null;
+    }
+
+    /**
+     * Replay the events buffered since {@link #beginBatch()} at once, and return when the executable
+     * has injected all of them and exited.
+     */
+    public void endBatch() throws IOException {
+        InputEventBatch batch = mBatch;
+        mBatch = null;
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        File file = File.createTempFile("batch", ".auto", mContext.getCacheDir());
+        try {
+            batch.writeTo(file);
+            new RootAutomatorEngine(mContext).execute(file.getAbsolutePath(), true);
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
     private void sendEventInternal(int type, int code, int value) {
         mShell.exec(type + " " + code + " " + value);
     }
@@ -146,15 +197,24 @@ public class RootAutomator implements Shell.Callback {
     }
 
     public void swipe(int x1, int y1, int x2, int y2, int duration, int id) throws IOException {
-        long now = SystemClock.uptimeMillis();
         touchDown(x1, y1, id);
-        long startTime = now;
-        long endTime = startTime + duration;
-        while (now < endTime) {
-            long elapsedTime = now - startTime;
-            float alpha = (float) elapsedTime / duration;
-            touchMove((int) lerp(x1, x2, alpha), (int) lerp(y1, y2, alpha), id);
-            now = SystemClock.uptimeMillis();
+        if (mBatch != null) {
+            int steps = Math.max(duration / SWIPE_STEP_MILLIS, 1);
+            for (int i = 1; i <= steps; i++) {
+                sleep((long) duration * i / steps - (long) duration * (i - 1) / steps);
+                float alpha = (float) i / steps;
+                touchMove((int) lerp(x1, x2, alpha), (int) lerp(y1, y2, alpha), id);
+            }
+        } else {
+            long now = SystemClock.uptimeMillis();
+            long startTime = now;
+            long endTime = startTime + duration;
+            while (now < endTime) {
+                long elapsedTime = now - startTime;
+                float alpha = (float) elapsedTime / duration;
+                touchMove((int) lerp(x1, x2, alpha), (int) lerp(y1, y2, alpha), id);
+                now = SystemClock.uptimeMillis();
+            }
         }
         touchUp(id);
     }
@@ -262,6 +322,10 @@ public class RootAutomator implements Shell.Callback {
     }
 
     private void sleep(long duration) throws IOException {
+        if (mBatch != null) {
+            mBatch.addSleep(duration);
+            return;
+        }
         try {
             Thread.sleep(duration);
         } catch (InterruptedException e) {
@@ -275,6 +339,7 @@ public class RootAutomator implements Shell.Callback {
     }
 
     public void exit() throws IOException {
+        mBatch = null;
         int interval = 20;
         int maxTryTimes = 3;
         
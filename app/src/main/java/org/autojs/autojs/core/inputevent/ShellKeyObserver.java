@@ -35,14 +35,14 @@ public class ShellKeyObserver implements InputEventObserver.InputEventListener {
 
     @Override
     public void onInputEvent(@NonNull InputEventObserver.InputEvent event) {
-        if (!event.type.equals("0001")) {
+        if (event.eventType != InputEventCodes.EV_KEY) {
             return;
         }
-        if (event.value.equalsIgnoreCase("00000000")) {
-            notifyKeyUp(keyCodeToKeyName(Integer.parseInt(event.code, 16)));
+        if (event.eventValue == InputEventCodes.UP) {
+            notifyKeyUp(keyCodeToKeyName(event.eventCode));
         }
-        if (event.value.equalsIgnoreCase("00000001")) {
-            notifyKeyDown(keyCodeToKeyName(Integer.parseInt(event.code, 16)));
+        if (event.eventValue == InputEventCodes.DOWN) {
+            notifyKeyDown(keyCodeToKeyName(event.eventCode));
         }
     }
 
@@ -2,9 +2,6 @@ package org.autojs.autojs.core.inputevent;
 
 import androidx.annotation.NonNull;
 
-import static org.autojs.autojs.core.record.inputevent.InputEventRecorder.parseDeviceNumber;
-
-
 /**
  * Created by Stardust on 2017/7/20.
  */
@@ -47,10 +44,9 @@ public class TouchObserver implements InputEventObserver.InputEventListener {
 
     @Override
     public void onInputEvent(@NonNull InputEventObserver.InputEvent event) {
-        int device = parseDeviceNumber(event.device);
-        int type = (int) Long.parseLong(event.type, 16);
-        int code = (int) Long.parseLong(event.code, 16);
-        int value = (int) Long.parseLong(event.value, 16);
+        int type = event.eventType;
+        int code = event.eventCode;
+        int value = event.eventValue;
         if (type != 3) {
             return;
         }
@@ -1,7 +1,6 @@
 package org.autojs.autojs.core.record.inputevent
 
 import android.content.Context
-import android.util.Log
 import org.autojs.autojs.core.inputevent.InputEventCodes
 import org.autojs.autojs.core.inputevent.InputEventObserver
 import org.autojs.autojs.core.inputevent.RootAutomator
@@ -10,6 +9,7 @@ import org.autojs.autojs.engine.RootAutomatorEngine.Companion.setTouchDevice
 import org.autojs.autojs.pio.UncheckedIOException
 import org.autojs.autojs.runtime.api.ScreenMetrics.Companion.deviceScreenHeight
 import org.autojs.autojs.runtime.api.ScreenMetrics.Companion.deviceScreenWidth
+import java.io.BufferedOutputStream
 import java.io.DataOutputStream
 import java.io.File
 import java.io.FileOutputStream
@@ -19,7 +19,7 @@ import java.io.IOException
  * Created by Stardust on 2017/8/2.
  */
 class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
-    private var mLastEventTime = 0.0
+    private var mLastEventTime = 0L
     private var mTouchDevice = -1
     private var mDataOutputStream: DataOutputStream? = null
     private var mTmpFile: File? = null
@@ -28,7 +28,7 @@ class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
         try {
             mTmpFile = File(context.cacheDir, "${System.currentTimeMillis()}.auto").also {
                 it.deleteOnExit()
-                mDataOutputStream = DataOutputStream(FileOutputStream(it))
+                mDataOutputStream = DataOutputStream(BufferedOutputStream(FileOutputStream(it)))
             }
             writeFileHeader()
         } catch (e: IOException) {
@@ -38,19 +38,12 @@ class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
 
     @Throws(IOException::class)
     private fun writeFileHeader() {
-        mDataOutputStream!!.writeInt(0x00B87B6D)
-        mDataOutputStream!!.writeInt(RootAutomatorEngine.VERSION)
-        mDataOutputStream!!.writeInt(deviceScreenWidth)
-        mDataOutputStream!!.writeInt(deviceScreenHeight)
-        for (i in 0..239) {
-            mDataOutputStream!!.writeByte(0)
-        }
+        RootAutomatorEngine.writeFileHeader(mDataOutputStream!!, deviceScreenWidth, deviceScreenHeight)
     }
 
     public override fun recordInputEvent(event: InputEventObserver.InputEvent) {
         try {
             convertEventOrThrow(event)
-            Log.d(LOG_TAG, "recordInputEvent: $event")
         } catch (e: IOException) {
             e.printStackTrace()
         }
@@ -58,16 +51,16 @@ class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
 
     @Throws(IOException::class)
     private fun convertEventOrThrow(event: InputEventObserver.InputEvent) {
-        if (mLastEventTime == 0.0) {
-            mLastEventTime = event.time
-        } else if (event.time - mLastEventTime > 0.001) {
-            writeSleep((1000L * (event.time - mLastEventTime)).toInt())
-            mLastEventTime = event.time
+        if (mLastEventTime == 0L) {
+            mLastEventTime = event.timeMicros
+        } else if (event.timeMicros - mLastEventTime > 1000) {
+            writeSleep(((event.timeMicros - mLastEventTime) / 1000).toInt())
+            mLastEventTime = event.timeMicros
         }
-        val device = parseDeviceNumber(event.device)
-        val type = event.type.toLong(16).toShort()
-        val code = event.code.toLong(16).toShort()
-        val value = event.value.toLong(16).toInt()
+        val device = event.deviceNumber
+        val type = event.eventType.toShort()
+        val code = event.eventCode.toShort()
+        val value = event.eventValue
         if (type.toInt() == InputEventCodes.EV_ABS) {
             if (code.toInt() == InputEventCodes.ABS_MT_POSITION_X || code.toInt() == InputEventCodes.ABS_MT_POSITION_Y) {
                 mTouchDevice = device
@@ -87,30 +80,25 @@ class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
         mDataOutputStream!!.writeShort(type.toInt())
         mDataOutputStream!!.writeShort(code.toInt())
         mDataOutputStream!!.writeInt(value)
-        Log.d(LOG_TAG, "write event: $event")
     }
 
     @Throws(IOException::class)
     private fun writeSleep(millis: Int) {
         mDataOutputStream!!.writeByte(RootAutomator.DATA_TYPE_SLEEP.toInt())
         mDataOutputStream!!.writeInt(millis)
-        Log.d(LOG_TAG, "write sleep: $millis")
     }
 
     @Throws(IOException::class)
     private fun writeSyncReport() {
         mDataOutputStream!!.writeByte(RootAutomator.DATA_TYPE_EVENT_SYNC_REPORT.toInt())
-        Log.d(LOG_TAG, "write sync report")
     }
 
     @Throws(IOException::class)
     private fun writeTouch(code: Short, value: Int) {
         if (code.toInt() == InputEventCodes.ABS_MT_POSITION_X) {
             mDataOutputStream!!.writeByte(RootAutomator.DATA_TYPE_EVENT_TOUCH_X.toInt())
-            Log.d(LOG_TAG, "write touch x: $value")
         } else {
             mDataOutputStream!!.writeByte(RootAutomator.DATA_TYPE_EVENT_TOUCH_Y.toInt())
-            Log.d(LOG_TAG, "write touch y: $value")
         }
         mDataOutputStream!!.writeInt(value)
     }
@@ -131,8 +119,4 @@ class InputEventToAutoFileRecorder(context: Context) : InputEventRecorder() {
             e.printStackTrace()
         }
     }
-
-    companion object {
-        private const val LOG_TAG = "InputEventToAutoFileRec"
-    }
 }
\ No newline at end of file
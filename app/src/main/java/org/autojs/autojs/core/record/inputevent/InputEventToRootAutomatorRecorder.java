@@ -15,7 +15,7 @@ import static org.autojs.autojs.runtime.api.ScreenMetrics.getDeviceScreenWidth;
 public class InputEventToRootAutomatorRecorder extends InputEventRecorder {
 
 
-    private double mLastEventTime;
+    private long mLastEventTime;
     private final StringBuilder mCode = new StringBuilder();
     private int mTouchDevice = -1;
 
@@ -28,15 +28,15 @@ public class InputEventToRootAutomatorRecorder extends InputEventRecorder {
     @Override
     public void recordInputEvent(@NonNull InputEventObserver.InputEvent event) {
         if (mLastEventTime == 0) {
-            mLastEventTime = event.time;
-        } else if (event.time - mLastEventTime > 0.001) {
-            mCode.append("sleep(").append((long) (1000L * (event.time - mLastEventTime))).append(");\n");
-            mLastEventTime = event.time;
+            mLastEventTime = event.timeMicros;
+        } else if (event.timeMicros - mLastEventTime > 1000) {
+            mCode.append("sleep(").append((event.timeMicros - mLastEventTime) / 1000).append(");\n");
+            mLastEventTime = event.timeMicros;
         }
-        int device = parseDeviceNumber(event.device);
-        int type = (int) Long.parseLong(event.type, 16);
-        int code = (int) Long.parseLong(event.code, 16);
-        int value = (int) Long.parseLong(event.value, 16);
+        int device = event.deviceNumber;
+        int type = event.eventType;
+        int code = event.eventCode;
+        int value = event.eventValue;
         if (type == InputEventCodes.EV_ABS) {
             if (code == InputEventCodes.ABS_MT_POSITION_X || code == InputEventCodes.ABS_MT_POSITION_Y) {
                 mTouchDevice = device;
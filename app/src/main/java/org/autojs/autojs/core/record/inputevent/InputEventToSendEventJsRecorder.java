@@ -12,7 +12,7 @@ import static org.autojs.autojs.runtime.api.ScreenMetrics.getDeviceScreenWidth;
  */
 public class InputEventToSendEventJsRecorder extends InputEventRecorder {
 
-    private double mLastEventTime;
+    private long mLastEventTime;
     private final StringBuilder mCode = new StringBuilder();
     private int mTouchDevice = -1;
     private int mLastTouchX = -1;
@@ -28,15 +28,15 @@ public class InputEventToSendEventJsRecorder extends InputEventRecorder {
     @Override
     public void recordInputEvent(@NonNull InputEventObserver.InputEvent event) {
         if (mLastEventTime == 0) {
-            mLastEventTime = event.time;
-        } else if (event.time - mLastEventTime > 0.03) {
-            mCode.append("sh.usleep(").append((long) (1000000 * (event.time - mLastEventTime))).append(");\n");
-            mLastEventTime = event.time;
+            mLastEventTime = event.timeMicros;
+        } else if (event.timeMicros - mLastEventTime > 30000) {
+            mCode.append("sh.usleep(").append(event.timeMicros - mLastEventTime).append(");\n");
+            mLastEventTime = event.timeMicros;
         }
-        int device = parseDeviceNumber(event.device);
-        int type = (int) Long.parseLong(event.type, 16);
-        int code = (int) Long.parseLong(event.code, 16);
-        int value = (int) Long.parseLong(event.value, 16);
+        int device = event.deviceNumber;
+        int type = event.eventType;
+        int code = event.eventCode;
+        int value = event.eventValue;
         if (type == 3) {
             if (code == 53) {
                 onTouchX(device, value);
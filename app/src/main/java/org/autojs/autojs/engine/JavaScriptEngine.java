@@ -54,6 +54,10 @@ public abstract class JavaScriptEngine extends ScriptEngine.AbstractScriptEngine
         mExecArgv = execArgv;
     }
 
+    void replaceExecArgv(Object execArgv) {
+        mExecArgv = execArgv;
+    }
+
     public Object getExecArgv() {
         return mExecArgv;
     }
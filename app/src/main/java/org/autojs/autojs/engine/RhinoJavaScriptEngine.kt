@@ -4,6 +4,7 @@ import android.util.Log
 import android.view.View
 import org.autojs.autojs.core.ui.ViewExtras
 import org.autojs.autojs.engine.module.AssetAndUrlModuleSourceProvider
+import org.autojs.autojs.engine.module.SharedModuleScriptProvider
 import org.autojs.autojs.execution.ExecutionConfig
 import org.autojs.autojs.pio.PFiles
 import org.autojs.autojs.pio.UncheckedIOException
@@ -19,7 +20,6 @@ import org.mozilla.javascript.Script
 import org.mozilla.javascript.Scriptable
 import org.mozilla.javascript.ScriptableObject
 import org.mozilla.javascript.commonjs.module.RequireBuilder
-import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider
 import java.io.File
 import java.io.IOException
 import java.io.InputStreamReader
@@ -42,14 +42,15 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
 
     private val wrapFactory = WrapFactory()
 
-    private val mInitScript: Script by lazy {
-        try {
-            val reader = InputStreamReader(mAndroidContext.assets.open(SOURCE_FILE_INIT))
-            context.compileReader(reader, SOURCE_NAME_INIT, 1, null)
-        } catch (e: IOException) {
-            throw UncheckedIOException(e)
+    private val mInitScript: Script
+        get() = sInitScript ?: synchronized(RhinoJavaScriptEngine::class.java) {
+            sInitScript ?: try {
+                val reader = InputStreamReader(mAndroidContext.assets.open(SOURCE_FILE_INIT))
+                context.compileReader(reader, SOURCE_NAME_INIT, 1, null).also { sInitScript = it }
+            } catch (e: IOException) {
+                throw UncheckedIOException(e)
+            }
         }
-    }
 
     override fun put(name: String, value: Any?) {
         ScriptableObject.putProperty(scriptable, name, Context.javaToJS(value, scriptable))
@@ -63,8 +64,13 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
 
     public override fun doExecution(source: JavaScriptSource): Any? {
         try {
-            val reader = preprocess(source.nonNullScriptReader)
-            val script = context.compileReader(reader, source.fullPath, 1, null)
+            context.optimizationLevel = optimizationLevel
+            val script = try {
+                ScriptCache.obtain(context, source.fullPath, source.script) { preprocess(it) }
+            } finally {
+                // Only the main script is compiled with the configured level, modules and eval code are interpreted.
+                context.optimizationLevel = -1
+            }
             return if (hasFeature(ScriptConfig.FEATURE_CONTINUATION)) {
                 context.executeScriptWithContinuations(script, scriptable)
             } else {
@@ -75,10 +81,27 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
         }
     }
 
+    /**
+     * Optimization level from script config, or -1 (interpreter)
+     * when continuations or a debugger need interpreted frames.
+     */
+    private val optimizationLevel: Int
+        get() {
+            if (hasFeature(ScriptConfig.FEATURE_CONTINUATION) || context.debugger != null) {
+                return -1
+            }
+            val config = getTag(ExecutionConfig.tag) as ExecutionConfig? ?: return -1
+            return config.scriptConfig.optimizationLevel?.coerceIn(-1, 9) ?: -1
+        }
+
     fun hasFeature(feature: String): Boolean {
         return (getTag(ExecutionConfig.tag) as ExecutionConfig? ?: return false).scriptConfig.hasFeature(feature)
     }
 
+    /**
+     * Scripts are compiled as ES6 (see [setupContext]), which has native template literals,
+     * so no preprocessor is applied.
+     */
     @Throws(IOException::class)
     protected fun preprocess(script: Reader) = script
 
@@ -109,12 +132,27 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
         }
     }
 
+    /**
+     * Bring an engine initialized by [ScriptEnginePool] up to date with the execution it is handed to,
+     * as init script ran before the working directory and arguments of the execution were known.
+     */
+    fun onAttached() {
+        (getTag(ExecutionConfig.tag) as ExecutionConfig?)?.let { config ->
+            val execArgv = context.newObject(scriptable)
+            config.arguments.forEach { (key, value) -> ScriptableObject.putProperty(execArgv, key, Context.javaToJS(value, scriptable)) }
+            replaceExecArgv(execArgv)
+        }
+        (ScriptableObject.getProperty(scriptable, "require") as? Scriptable)?.let {
+            ScriptableObject.putProperty(it, "root", cwd())
+        }
+    }
+
     private fun initRequireBuilder(context: Context, scope: Scriptable) {
         val provider = AssetAndUrlModuleSourceProvider(
             mAndroidContext, MODULES_ROOT_PATH, listOf<URI>(File(File.separator).toURI())
         )
         RequireBuilder()
-            .setModuleScriptProvider(SoftCachingModuleScriptProvider(provider))
+            .setModuleScriptProvider(SharedModuleScriptProvider(provider))
             .setSandboxed(true)
             .createRequire(context, scope)
             .install(scope)
@@ -165,6 +203,10 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
 
         private val TAG = RhinoJavaScriptEngine::class.java.simpleName
 
+        // The init asset does not change during the process lifetime, so it is compiled once for all engines.
+        @Volatile
+        private var sInitScript: Script? = null
+
     }
 
 }
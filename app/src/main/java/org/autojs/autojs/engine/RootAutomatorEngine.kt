@@ -34,22 +34,33 @@ class RootAutomatorEngine @JvmOverloads constructor(private val mContext: Contex
         mDeviceNameOrPath = getDeviceNameOrPath(mContext, deviceNameOrPath)
     }
 
-    fun execute(autoFile: String) {
+    /**
+     * Replay the .auto file with the executable started through su.
+     *
+     * @param waitForExit whether to return only when the executable has exited, instead of when it is started,
+     * so that the file can be deleted afterwards. The executable is killed if the wait is interrupted.
+     */
+    @JvmOverloads
+    fun execute(autoFile: String, waitForExit: Boolean = false) {
         Log.d(LOG_TAG, "exec: $autoFile")
 
         mExecutablePath = getExecutablePath(mContext)
 
-        val commands = arrayOf(
+        // Output is not read after the pid, so it must not fill the pipe while su waits.
+        val redirect = if (waitForExit) " > /dev/null 2>&1" else ""
+        val commands = listOfNotNull(
             "chmod 755 $mExecutablePath",
             // to run root_automator
-            "\"$mExecutablePath\" \"$autoFile\" -d \"$mDeviceNameOrPath\" &",
+            "\"$mExecutablePath\" \"$autoFile\" -d \"$mDeviceNameOrPath\"$redirect &",
             // to print the root_automator pid
             "echo $!",
+            // to keep su until root_automator exits
+            "wait $!".takeIf { waitForExit },
             // to exit su
             "exit",
             // to exit shell
             "exit",
-        )
+        ).toTypedArray()
         try {
             Runtime.getRuntime().exec(AbstractShell.COMMAND_SU).also {
                 mProcess = it
@@ -63,6 +74,9 @@ class RootAutomatorEngine @JvmOverloads constructor(private val mContext: Contex
             }
             throw ScriptException(e)
         } catch (e: InterruptedException) {
+            if (waitForExit) {
+                mPid?.let { ProcessShell.exec("kill $it", true) }
+            }
             throw ScriptInterruptedException()
         } finally {
             mProcess?.destroy()
@@ -121,6 +135,9 @@ class RootAutomatorEngine @JvmOverloads constructor(private val mContext: Contex
 
         const val VERSION = 1
 
+        private const val FILE_MAGIC = 0x00B87B6D
+        private const val FILE_HEADER_PADDING = 240
+
         private val KEY_TOUCH_DEVICE = RootAutomatorEngine::class.java.name + ".touch_device"
         private val PID_PATTERN = Pattern.compile("\\d{2,}")
         private var sTouchDevice = -1
@@ -148,6 +165,19 @@ class RootAutomatorEngine @JvmOverloads constructor(private val mContext: Contex
             }
         }
 
+        /**
+         * Write the header of an .auto file, where the screen size is the one touch positions are relative to.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun writeFileHeader(out: DataOutputStream, screenWidth: Int, screenHeight: Int) {
+            out.writeInt(FILE_MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(screenWidth)
+            out.writeInt(screenHeight)
+            out.write(ByteArray(FILE_HEADER_PADDING))
+        }
+
         @JvmStatic
         fun setTouchDevice(device: Int) {
             sTouchDevice = device
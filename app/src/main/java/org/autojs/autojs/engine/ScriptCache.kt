@@ -0,0 +1,126 @@
+package org.autojs.autojs.engine
+
+import android.util.Log
+import android.util.LruCache
+import org.autojs.autojs.annotation.ScriptInterface
+import org.autojs.autojs.rhino.DexScriptCache
+import org.autojs.autojs.runtime.exception.ScriptInterruptedException
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Script
+import java.io.IOException
+import java.io.Reader
+import java.io.StringReader
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Process-wide cache of compiled [Script] objects shared by all [RhinoJavaScriptEngine] instances.
+ *
+ * Entries are keyed by source path, content hash and the compilation settings of the context,
+ * so a modified file or a different optimization level never hits a stale entry.
+ * Compiled scripts do not hold a scope and may be executed in any engine.
+ * The cache is bounded by the total length of cached sources, least recently used entries are evicted first.
+ */
+object ScriptCache {
+
+    private val TAG = ScriptCache::class.java.simpleName
+
+    private const val DEFAULT_MAX_SOURCE_LENGTH = 4 * 1024 * 1024
+
+    private data class Key(val path: String, val hash: String, val optimizationLevel: Int, val languageVersion: Int)
+
+    private class Entry(val script: Script, val length: Int)
+
+    private val mHits = AtomicLong()
+    private val mMisses = AtomicLong()
+
+    private val mCache = object : LruCache<Key, Entry>(DEFAULT_MAX_SOURCE_LENGTH) {
+        override fun sizeOf(key: Key, value: Entry) = value.length.coerceAtLeast(1)
+    }
+
+    @get:ScriptInterface
+    @set:ScriptInterface
+    var maxSourceLength: Int
+        get() = mCache.maxSize()
+        set(value) = when {
+            value > 0 -> mCache.resize(value)
+            else -> mCache.evictAll()
+        }
+
+    @get:ScriptInterface
+    val hits
+        get() = mHits.get()
+
+    @get:ScriptInterface
+    val misses
+        get() = mMisses.get()
+
+    @get:ScriptInterface
+    val size
+        get() = mCache.size()
+
+    @get:ScriptInterface
+    val count
+        get() = mCache.snapshot().size
+
+    /**
+     * Get the compiled script of [source] from cache, or compile it with [context] and cache the result.
+     *
+     * @param preprocess applied to the source before compiling, it must be deterministic for a given source.
+     */
+    @JvmStatic
+    fun obtain(context: Context, path: String, source: String, preprocess: (Reader) -> Reader): Script {
+        val hash = hash(source)
+        val key = Key(path, hash, context.optimizationLevel, context.languageVersion)
+        mCache.get(key)?.let {
+            mHits.incrementAndGet()
+            return it.script
+        }
+        mMisses.incrementAndGet()
+        val start = System.currentTimeMillis()
+        val script = when {
+            context.optimizationLevel >= 0 -> compileToDex(context, path, preprocess(StringReader(source)).use { it.readText() }, hash)
+            else -> preprocess(StringReader(source)).use { context.compileReader(it, path, 1, null) }
+        }
+        Log.d(TAG, "compiled $path in ${System.currentTimeMillis() - start} ms")
+        // Entries of the same path with an outdated hash are left for the LRU to evict.
+        mCache.put(key, Entry(script, source.length))
+        return script
+    }
+
+    @JvmStatic
+    @ScriptInterface
+    fun clear() {
+        mCache.evictAll()
+        Log.d(TAG, "cleared, hits: ${mHits.get()}, misses: ${mMisses.get()}")
+    }
+
+    private fun compileToDex(context: Context, path: String, source: String, hash: String): Script = try {
+        DexScriptCache.load(context, path, source, hash)
+    } catch (e: IOException) {
+        interpret(context, path, source, e)
+    } catch (e: ScriptInterruptedException) {
+        throw e
+    } catch (e: RuntimeException) {
+        // Class generation or dexing may also fail inside Rhino or the dexer (e.g. code too large for a method).
+        interpret(context, path, source, e)
+    }
+
+    private fun interpret(context: Context, path: String, source: String, cause: Exception): Script {
+        // Class generation is not available on every device, so the script runs with interpreter instead.
+        Log.w(TAG, "failed to compile $path to dex, fall back to interpreter", cause)
+        val level = context.optimizationLevel
+        context.optimizationLevel = -1
+        try {
+            return context.compileString(source, path, 1, null)
+        } finally {
+            context.optimizationLevel = level
+        }
+    }
+
+    private fun hash(source: String): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(source.toByteArray())
+        return digest.joinToString("") { "%02x".format(it) }
+    }
+
+}
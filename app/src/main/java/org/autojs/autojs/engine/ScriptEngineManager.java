@@ -89,13 +89,31 @@ public class ScriptEngineManager {
 
     @Nullable
     public ScriptEngine createEngine(String name, int id) {
+        ScriptEngine engine = createDetachedEngine(name);
+        if (engine == null) {
+            return null;
+        }
+        return attachEngine(engine, id);
+    }
+
+    /**
+     * Create an engine which is not managed (and therefore not visible to {@link #getEngines()})
+     * until {@link #attachEngine(ScriptEngine, int)} is called, e.g. for pre-initialization.
+     */
+    @Nullable
+    public ScriptEngine createDetachedEngine(String name) {
         Supplier<ScriptEngine> s = mEngineSuppliers.get(name);
         if (s == null) {
             return null;
         }
         ScriptEngine engine = s.get();
-        engine.setId(id);
         putProperties(engine);
+        return engine;
+    }
+
+    @NonNull
+    public ScriptEngine attachEngine(ScriptEngine engine, int id) {
+        engine.setId(id);
         addEngine(engine);
         return engine;
     }
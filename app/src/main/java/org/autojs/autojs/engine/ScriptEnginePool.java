@@ -0,0 +1,259 @@
+package org.autojs.autojs.engine;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.autojs.autojs.annotation.ScriptInterface;
+import org.autojs.autojs.execution.ExecutionConfig;
+import org.autojs.autojs.execution.RunnableScriptExecution;
+import org.autojs.autojs.lang.ThreadCompat;
+import org.autojs.autojs.pref.Pref;
+import org.autojs.autojs.util.WorkingDirectoryUtils;
+import org.autojs.autojs6.R;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pre-initialized engines, each of which is parked on its own thread
+ * with scope built and init script executed, waiting for an execution to be handed to.
+ * <p>
+ * An engine is bound to the thread it was created on (Rhino context and looper),
+ * so the pool keeps worker threads rather than engine objects.
+ * Engines are used only once, and the pool is refilled in background after each hand-out.
+ * Idle engines are destroyed after the idle timeout from settings,
+ * and replaced when one of the {@link #INIT_SCRIPT_PREF_KEYS} changes.
+ * </p>
+ */
+public class ScriptEnginePool {
+
+    private static final String TAG = ScriptEnginePool.class.getSimpleName();
+
+    /**
+     * Keys of settings which init script reads when an engine warms up, and so which invalidate the pool.
+     */
+    public static final int[] INIT_SCRIPT_PREF_KEYS = {
+            R.string.key_lazy_global_modules,
+            R.string.key_compatibility_with_classes_for_ver_4_x,
+            R.string.key_extending_js_build_in_objects,
+    };
+
+    private final ScriptEngineManager mScriptEngineManager;
+    private final String mEngineName;
+    private final LinkedBlockingDeque<Worker> mIdleWorkers = new LinkedBlockingDeque<>();
+    private final AtomicInteger mWarmingUpCount = new AtomicInteger();
+    private final AtomicInteger mWorkerCount = new AtomicInteger();
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mPooledStarts = new AtomicLong();
+    private final AtomicLong mPooledStartMillis = new AtomicLong();
+    private final AtomicLong mColdStarts = new AtomicLong();
+    private final AtomicLong mColdStartMillis = new AtomicLong();
+
+    public ScriptEnginePool(ScriptEngineManager manager, String engineName) {
+        mScriptEngineManager = manager;
+        mEngineName = engineName;
+    }
+
+    /**
+     * Hand the execution over to an idle pre-initialized engine.
+     *
+     * @return false if the pool is disabled or exhausted, and the execution should be started as usual
+     */
+    public boolean execute(RunnableScriptExecution execution) {
+        if (getMaxSize() <= 0) {
+            return false;
+        }
+        try {
+            Worker worker;
+            while ((worker = mIdleWorkers.pollFirst()) != null) {
+                if (worker.offer(execution)) {
+                    mHits.incrementAndGet();
+                    return true;
+                }
+            }
+            mMisses.incrementAndGet();
+            return false;
+        } finally {
+            refill();
+        }
+    }
+
+    /**
+     * Start warming up engines until the pool reaches the size from settings.
+     */
+    public synchronized void refill() {
+        int maxSize = getMaxSize();
+        while (mIdleWorkers.size() + mWarmingUpCount.get() < maxSize) {
+            mWarmingUpCount.incrementAndGet();
+            new Worker().start();
+        }
+        while (mIdleWorkers.size() > maxSize) {
+            Worker worker = mIdleWorkers.pollLast();
+            if (worker != null) {
+                worker.retire();
+            }
+        }
+    }
+
+    /**
+     * Replace idle and warming up engines by engines initialized with current settings.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+        clear();
+        refill();
+    }
+
+    @ScriptInterface
+    public void clear() {
+        Worker worker;
+        while ((worker = mIdleWorkers.pollFirst()) != null) {
+            worker.retire();
+        }
+    }
+
+    public void recordTimeToFirstLine(long millis, boolean isPooled) {
+        if (isPooled) {
+            mPooledStarts.incrementAndGet();
+            mPooledStartMillis.addAndGet(millis);
+        } else {
+            mColdStarts.incrementAndGet();
+            mColdStartMillis.addAndGet(millis);
+        }
+        Log.d(TAG, "time to first line: " + millis + " ms (" + (isPooled ? "pooled" : "cold") + ")");
+    }
+
+    @ScriptInterface
+    public int getMaxSize() {
+        return Pref.getEnginePoolSize();
+    }
+
+    @ScriptInterface
+    public int getIdleCount() {
+        return mIdleWorkers.size();
+    }
+
+    @ScriptInterface
+    public long getHits() {
+        return mHits.get();
+    }
+
+    @ScriptInterface
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    @ScriptInterface
+    public double getAveragePooledTimeToFirstLine() {
+        return average(mPooledStartMillis, mPooledStarts);
+    }
+
+    @ScriptInterface
+    public double getAverageColdTimeToFirstLine() {
+        return average(mColdStartMillis, mColdStarts);
+    }
+
+    private static double average(AtomicLong total, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    private class Worker extends ThreadCompat {
+
+        private final int mGenerationAtWarmUp = mGeneration.get();
+        private RunnableScriptExecution mExecution;
+        private boolean mRetired = false;
+
+        Worker() {
+            super("ScriptEnginePool-" + mWorkerCount.incrementAndGet());
+        }
+
+        synchronized boolean offer(RunnableScriptExecution execution) {
+            if (mRetired || isStale()) {
+                return false;
+            }
+            mExecution = execution;
+            notifyAll();
+            return true;
+        }
+
+        synchronized void retire() {
+            mRetired = true;
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            ScriptEngine engine;
+            try {
+                engine = warmUp();
+            } catch (Throwable e) {
+                Log.w(TAG, "failed to warm up an engine", e);
+                return;
+            } finally {
+                mWarmingUpCount.decrementAndGet();
+            }
+            if (isStale()) {
+                engine.destroy();
+                refill();
+                return;
+            }
+            mIdleWorkers.addLast(this);
+            RunnableScriptExecution execution = await(Pref.getEnginePoolIdleTimeout());
+            if (execution == null) {
+                mIdleWorkers.remove(this);
+                Log.d(TAG, "destroy idle engine: " + engine);
+                engine.destroy();
+                return;
+            }
+            execution.run(engine);
+        }
+
+        private boolean isStale() {
+            return mGenerationAtWarmUp != mGeneration.get();
+        }
+
+        @NonNull
+        private ScriptEngine warmUp() {
+            long start = SystemClock.uptimeMillis();
+            ScriptEngine engine = mScriptEngineManager.createDetachedEngine(mEngineName);
+            if (engine == null) {
+                throw new ScriptEngineFactory.EngineNotFoundException("name: " + mEngineName);
+            }
+            // Placeholders until an execution is handed to, which are read by init script.
+            String workingDirectory = WorkingDirectoryUtils.getPath();
+            engine.setTag(ScriptEngine.TAG_WORKING_DIRECTORY, workingDirectory);
+            ExecutionConfig config = new ExecutionConfig();
+            config.setWorkingDirectory(workingDirectory);
+            engine.setTag(ExecutionConfig.tag, config);
+            engine.init();
+            Log.d(TAG, "engine warmed up in " + (SystemClock.uptimeMillis() - start) + " ms");
+            return engine;
+        }
+
+        private synchronized RunnableScriptExecution await(long timeout) {
+            long deadline = SystemClock.uptimeMillis() + timeout;
+            while (mExecution == null && !mRetired) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            mRetired = true;
+            return mExecution;
+        }
+
+    }
+
+}
@@ -2,10 +2,12 @@ package org.autojs.autojs.engine;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
+import org.autojs.autojs.core.image.ImageBufferPool;
 import org.autojs.autojs.execution.ExecutionConfig;
 import org.autojs.autojs.execution.LoopedBasedJavaScriptExecution;
 import org.autojs.autojs.execution.RunnableScriptExecution;
@@ -40,10 +42,15 @@ public class ScriptEngineService {
     private final UiHandler mUiHandler;
     private final Console mGlobalConsole;
     private final ScriptEngineManager mScriptEngineManager;
+    private final ScriptEnginePool mScriptEnginePool;
     private final EngineLifecycleObserver mEngineLifecycleObserver = new EngineLifecycleObserver() {
         @Override
         public void onEngineRemove(ScriptEngine engine) {
             mScriptExecutions.remove(engine.getId());
+            if (mScriptExecutions.isEmpty()) {
+                // Buffers pooled for images are only worth keeping while some script may reuse them.
+                ImageBufferPool.clear();
+            }
             super.onEngineRemove(engine);
         }
     };
@@ -54,12 +61,16 @@ public class ScriptEngineService {
         mUiHandler = builder.mUiHandler;
         mApplicationContext = mUiHandler.getApplicationContext();
         mScriptEngineManager = builder.mScriptEngineManager;
+        mScriptEnginePool = new ScriptEnginePool(mScriptEngineManager, JavaScriptSource.ENGINE);
         mGlobalConsole = builder.mGlobalConsole;
         mScriptEngineManager.setEngineLifecycleCallback(mEngineLifecycleObserver);
         mScriptExecutionObserver.registerScriptExecutionListener(new SimpleScriptExecutionListener() {
             @Override
             public void onStart(ScriptExecution execution) {
                 ScriptSource scriptSource = execution.getSource();
+                if (execution instanceof RunnableScriptExecution r) {
+                    mScriptEnginePool.recordTimeToFirstLine(SystemClock.uptimeMillis() - r.getCreatedAt(), r.isPrewarmed());
+                }
                 if (execution.getEngine() instanceof JavaScriptEngine) {
                     ((JavaScriptEngine) execution.getEngine()).getRuntime().console.setTitle(scriptSource.getName());
                 }
@@ -149,6 +160,9 @@ public class ScriptEngineService {
         RunnableScriptExecution r;
         if (source instanceof JavaScriptSource) {
             r = new LoopedBasedJavaScriptExecution(mScriptEngineManager, task);
+            if (mScriptEnginePool.execute(r)) {
+                return r;
+            }
         } else {
             r = new RunnableScriptExecution(mScriptEngineManager, task);
         }
@@ -180,6 +194,10 @@ public class ScriptEngineService {
         return mScriptEngineManager.getEngines();
     }
 
+    public ScriptEnginePool getEnginePool() {
+        return mScriptEnginePool;
+    }
+
     public Collection<ScriptExecution> getScriptExecutions() {
         return mScriptExecutions.values();
     }
@@ -0,0 +1,30 @@
+package org.autojs.autojs.engine.module
+
+import org.autojs.autojs.engine.ScriptCache
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.commonjs.module.ModuleScript
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider
+import java.net.URI
+
+/**
+ * Module script provider which compiles modules through the process-wide [ScriptCache],
+ * so that a module is compiled once for all engines as long as its content (by hash) does not change.
+ *
+ * Sources are still loaded on each require, as a content hash costs much less than a parse,
+ * and it also covers modules from files and urls which may change between executions.
+ */
+class SharedModuleScriptProvider(private val moduleSourceProvider: ModuleSourceProvider) : ModuleScriptProvider {
+
+    override fun getModuleScript(cx: Context, moduleId: String, moduleUri: URI?, baseUri: URI?, paths: Scriptable?): ModuleScript? {
+        val moduleSource = when (moduleUri) {
+            null -> moduleSourceProvider.loadSource(moduleId, paths, null)
+            else -> moduleSourceProvider.loadSource(moduleUri, baseUri, null)
+        } ?: return null
+        val source = moduleSource.reader.use { it.readText() }
+        val script = ScriptCache.obtain(cx, moduleSource.uri.toString(), source) { it }
+        return ModuleScript(script, moduleSource.uri, moduleSource.base)
+    }
+
+}
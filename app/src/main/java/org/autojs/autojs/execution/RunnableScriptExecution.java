@@ -1,7 +1,9 @@
 package org.autojs.autojs.execution;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import org.autojs.autojs.engine.RhinoJavaScriptEngine;
 import org.autojs.autojs.engine.ScriptEngine;
 import org.autojs.autojs.engine.ScriptEngineManager;
 import org.autojs.autojs.lang.ThreadCompat;
@@ -16,6 +18,8 @@ public class RunnableScriptExecution extends ScriptExecution.AbstractScriptExecu
     private static final String TAG = "RunnableJSExecution";
     private ScriptEngine mScriptEngine;
     private final ScriptEngineManager mScriptEngineManager;
+    private final long mCreatedAt = SystemClock.uptimeMillis();
+    private boolean mIsPrewarmed = false;
 
     public RunnableScriptExecution(ScriptEngineManager manager, ScriptExecutionTask task) {
         super(task);
@@ -28,12 +32,31 @@ public class RunnableScriptExecution extends ScriptExecution.AbstractScriptExecu
         execute();
     }
 
+    /**
+     * Run with an engine which has been initialized on the current thread.
+     */
+    public void run(ScriptEngine initializedEngine) {
+        ThreadCompat.currentThread().setName("ScriptThread-" + getId() + "[" + getSource() + "]");
+        mIsPrewarmed = true;
+        mScriptEngine = mScriptEngineManager.attachEngine(initializedEngine, getId());
+        mScriptEngine.setTag(ExecutionConfig.tag, getConfig());
+        execute(mScriptEngine);
+    }
+
     public Object execute() {
         mScriptEngine = mScriptEngineManager.createEngineOfSourceOrThrow(getSource(), getId());
         mScriptEngine.setTag(ExecutionConfig.tag, getConfig());
         return execute(mScriptEngine);
     }
 
+    public long getCreatedAt() {
+        return mCreatedAt;
+    }
+
+    public boolean isPrewarmed() {
+        return mIsPrewarmed;
+    }
+
     private Object execute(ScriptEngine engine) {
         try {
             prepare(engine);
@@ -62,7 +85,11 @@ public class RunnableScriptExecution extends ScriptExecution.AbstractScriptExecu
     private void prepare(ScriptEngine engine) {
         engine.setTag(ScriptEngine.TAG_WORKING_DIRECTORY, getConfig().getWorkingDirectory());
         engine.setTag(ScriptEngine.TAG_ENV_PATH, getConfig().getPath());
-        engine.init();
+        if (!mIsPrewarmed) {
+            engine.init();
+        } else if (engine instanceof RhinoJavaScriptEngine rhinoEngine) {
+            rhinoEngine.onAttached();
+        }
     }
 
     protected Object doExecution(ScriptEngine engine) {
@@ -1,46 +1,224 @@
 package org.autojs.autojs.io;
 
-import org.autojs.autojs.pio.PFiles;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
+/**
+ * Extraction of zip archives.
+ * <p>
+ * Archives from a stream are extracted sequentially while being read.
+ * Archives from a file are extracted in parallel, by a pool of workers taking entries from the central directory,
+ * which pays off for archives of many small files where a single thread mostly waits for file creation.
+ * Both ways take an optional {@link EntryFilter} to extract a subset of entries.
+ * </p>
+ */
 public class Zip {
 
+    public interface EntryFilter {
+
+        boolean accept(ZipEntry entry);
+
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Archives with fewer files are extracted on the calling thread, as the hand-off costs more than it saves.
+    private static final int MIN_PARALLEL_ENTRIES = 16;
+
+    private static final int THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, r -> {
+        Thread thread = new Thread(r, "Zip-" + sThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
     public static void unzip(InputStream stream, File dir) throws IOException {
-        FileOutputStream fos = null;
-        ZipInputStream zis = null;
-        try {
-            zis = new ZipInputStream(stream);
+        unzip(stream, dir, null);
+    }
+
+    public static void unzip(InputStream stream, File dir, @Nullable EntryFilter filter) throws IOException {
+        Set<File> createdDirs = new HashSet<>();
+        byte[] buffer = sBuffer.get();
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(stream, BUFFER_SIZE))) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
-                File file = new File(dir, entry.getName());
+                if (filter != null && !filter.accept(entry)) {
+                    continue;
+                }
+                File file = resolve(dir, entry);
                 if (entry.isDirectory()) {
-                    file.mkdirs();
+                    ensureDir(file, createdDirs);
                 } else {
-                    PFiles.ensureDir(file.getPath());
-                    fos = new FileOutputStream(file);
-                    PFiles.write(zis, fos, false);
-                    fos.close();
-                    fos = null;
-                    zis.closeEntry();
+                    ensureDir(file.getParentFile(), createdDirs);
+                    write(zis, file, buffer, entry.getTime());
                 }
             }
-        } finally {
-            PFiles.closeSilently(fos);
-            PFiles.closeSilently(stream);
-            PFiles.closeSilently(zis);
         }
     }
 
     public static void unzip(File zipFile, File dir) throws IOException {
-        unzip(new FileInputStream(zipFile), dir);
+        unzip(zipFile, dir, null);
+    }
+
+    public static void unzip(File zipFile, File dir, @Nullable EntryFilter filter) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            Set<File> dirs = new HashSet<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                ZipEntry entry = e.nextElement();
+                if (filter != null && !filter.accept(entry)) {
+                    continue;
+                }
+                File file = resolve(dir, entry);
+                if (entry.isDirectory()) {
+                    dirs.add(file);
+                } else {
+                    dirs.add(file.getParentFile());
+                    entries.add(entry);
+                    files.add(file);
+                }
+            }
+            // Directories are created up front, so that workers only write files.
+            Set<File> createdDirs = new HashSet<>();
+            for (File d : dirs) {
+                ensureDir(d, createdDirs);
+            }
+            if (entries.size() < MIN_PARALLEL_ENTRIES) {
+                byte[] buffer = sBuffer.get();
+                for (int i = 0; i < entries.size(); i++) {
+                    try (InputStream is = zip.getInputStream(entries.get(i))) {
+                        write(is, files.get(i), buffer, entries.get(i).getTime());
+                    }
+                }
+                return;
+            }
+            extractInParallel(zip, entries, files);
+        }
+    }
+
+    private static void extractInParallel(ZipFile zip, List<ZipEntry> entries, List<File> files) throws IOException {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<Void>> tasks = new ArrayList<>(THREAD_COUNT);
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            tasks.add(sExecutor.submit(() -> {
+                byte[] buffer = sBuffer.get();
+                int i;
+                while ((i = next.getAndIncrement()) < entries.size()) {
+                    try (InputStream is = zip.getInputStream(entries.get(i))) {
+                        write(is, files.get(i), buffer, entries.get(i).getTime());
+                    }
+                }
+                return null;
+            }));
+        }
+        // Every worker is waited for, even after a failure or an interrupt, so that none of them still writes
+        // files or reads the zip when the caller gets the exception and the zip is closed.
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Void> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (failure == null) {
+                        failure = new InterruptedIOException();
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                    break;
+                } finally {
+                    if (failure != null) {
+                        // Remaining entries are skipped by the workers once the index runs out.
+                        next.set(entries.size());
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    // Names are checked by segments instead of canonical paths, to save file system calls for each entry.
+    @NonNull
+    private static File resolve(File dir, ZipEntry entry) throws IOException {
+        String name = entry.getName();
+        if (name.startsWith("/") || name.startsWith("\\")) {
+            throw new IOException("Entry is out of the target directory: " + name);
+        }
+        for (String segment : name.split("[/\\\\]")) {
+            if (segment.equals("..")) {
+                throw new IOException("Entry is out of the target directory: " + name);
+            }
+        }
+        return new File(dir, name);
+    }
+
+    private static void ensureDir(@Nullable File dir, Set<File> createdDirs) throws IOException {
+        if (dir == null || !createdDirs.add(dir)) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create directory " + dir);
+        }
     }
 
+    // Modification time of the entry is kept, which lets later steps (e.g. APK signing) detect unchanged files.
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void write(InputStream is, File file, byte[] buffer, long time) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                os.write(buffer, 0, n);
+            }
+        }
+        if (time > 0) {
+            file.setLastModified(time);
+        }
+    }
 
 }
@@ -1,56 +1,151 @@
 package org.autojs.autojs.model.autocomplete;
 
-import android.text.Editable;
+import androidx.annotation.Nullable;
 
 import org.autojs.autojs.ui.widget.SimpleTextWatcher;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Stardust on 2018/2/26.
+ * <p>
+ * Words of the text are counted in a {@link WordIndex}, which is updated with the words around each edit only.
+ * Text is read on the main thread, while the index is updated and searched on the executor,
+ * which must be single-threaded so that updates are applied in order.
+ * </p>
  */
 public class AnyWordsCompletion extends SimpleTextWatcher {
 
+    private static final int MAX_COMPLETIONS = 50;
 
-    private static final String PATTERN = "[\\W]";
     private final ExecutorService mExecutorService;
-    private volatile DictionaryTree<String> mDictionaryTree;
-    private final AtomicInteger mExecuteId = new AtomicInteger();
+    private final WordIndex mWordIndex = new WordIndex();
+    private int mTextLength;
+    private boolean mOutOfSync;
 
     public AnyWordsCompletion(ExecutorService executorService) {
         mExecutorService = executorService;
     }
 
     @Override
-    public void afterTextChanged(Editable s) {
-        String str = s.toString();
-        int id = mExecuteId.incrementAndGet();
-        mExecutorService.execute(() -> splitWords(id, str));
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        // Text may have been set before this watcher is added.
+        mOutOfSync = s.length() != mTextLength;
+        if (mOutOfSync) {
+            return;
+        }
+        String removed = getWordRange(s, start, start + count);
+        mExecutorService.execute(() -> mWordIndex.update(countWords(removed, -1)));
     }
 
-    private void splitWords(int id, String s) {
-        if(id != mExecuteId.get()){
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        mTextLength = s.length();
+        if (mOutOfSync) {
+            String text = s.toString();
+            mExecutorService.execute(() -> {
+                mWordIndex.clear();
+                mWordIndex.update(countWords(text, 1));
+            });
             return;
         }
-        DictionaryTree<String> tree = new DictionaryTree<>();
-        String[] words = s.split(PATTERN);
-        for (String word : words) {
-            if(id != mExecuteId.get()){
-                return;
+        String added = getWordRange(s, start, start + count);
+        mExecutorService.execute(() -> mWordIndex.update(countWords(added, 1)));
+    }
+
+    public void findCodeCompletion(List<CodeCompletion> completions, String wordPrefill) {
+        findCodeCompletion(completions, wordPrefill, null, 0);
+    }
+
+    /**
+     * Find words starting with the prefill, where words near the cursor come first, then the most frequent ones.
+     * It must be called on the executor.
+     *
+     * @param nearbyText text around the cursor, or null if unknown
+     * @param cursor     position of the cursor in the nearby text
+     */
+    public void findCodeCompletion(List<CodeCompletion> completions, String wordPrefill, @Nullable String nearbyText, int cursor) {
+        Map<String, Integer> distances = nearbyText == null ? null : getDistances(nearbyText, cursor, wordPrefill);
+        for (String word : mWordIndex.search(wordPrefill, distances, wordPrefill, MAX_COMPLETIONS)) {
+            completions.add(new CodeCompletion(word, null, wordPrefill.length()));
+        }
+    }
+
+    /**
+     * Text from the start of the word at the start of the range to the end of the word at the end of the range,
+     * so that words partly in the range are counted as a whole.
+     */
+    private static String getWordRange(CharSequence s, int start, int end) {
+        while (start > 0 && isWordChar(s.charAt(start - 1))) {
+            start--;
+        }
+        while (end < s.length() && isWordChar(s.charAt(end))) {
+            end++;
+        }
+        return s.subSequence(start, end).toString();
+    }
+
+    private static Map<String, Integer> countWords(String text, int delta) {
+        Map<String, Integer> counts = new HashMap<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            // Numbers are not worth completing.
+            if (!isDigit(text.charAt(start))) {
+                String word = text.substring(start, i);
+                Integer count = counts.get(word);
+                counts.put(word, count == null ? delta : count + delta);
             }
-            tree.putWord(word, word);
         }
-        mDictionaryTree = tree;
+        return counts;
     }
 
-    public void findCodeCompletion(List<CodeCompletion> completions, String wordPrefill) {
-        if (mDictionaryTree == null)
-            return;
-        List<DictionaryTree.Entry<String>> result = mDictionaryTree.searchByPrefill(wordPrefill);
-        for (DictionaryTree.Entry<String> entry : result) {
-            completions.add(new CodeCompletion(entry.tag, null, wordPrefill.length()));
+    /**
+     * Distance from the cursor to the nearest occurrence of each word with the prefix, except the word at the cursor.
+     */
+    private static Map<String, Integer> getDistances(String text, int cursor, String prefix) {
+        Map<String, Integer> distances = new HashMap<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isWordChar(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (cursor >= start && cursor <= i || !text.startsWith(prefix, start)) {
+                continue;
+            }
+            String word = text.substring(start, i);
+            int distance = Math.abs(start - cursor);
+            Integer previous = distances.get(word);
+            if (previous == null || previous > distance) {
+                distances.put(word, distance);
+            }
         }
+        return distances;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c) || c == '_';
     }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
 }
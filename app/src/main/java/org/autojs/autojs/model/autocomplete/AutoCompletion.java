@@ -4,6 +4,7 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
 import android.widget.EditText;
 
 import org.autojs.autojs.model.indices.Module;
@@ -34,6 +35,9 @@ public class AutoCompletion {
 
     private static final Pattern STATEMENT = Pattern.compile("([A-Za-z]+\\.)?([a-zA-Z][a-zA-Z0-9_]*)?$");
 
+    // Characters around the cursor where words are ranked by distance from the cursor.
+    private static final int NEARBY_RANGE = 4 * 1024;
+
     private String mModuleName;
     private String mPropertyPrefill;
     private List<Module> mModules;
@@ -88,11 +92,15 @@ public class AutoCompletion {
         if (mPropertyPrefill == null && module == null)
             return;
         String prefill = mPropertyPrefill;
+        Editable text = mEditText.getText();
+        int position = mEditText.getSelectionStart();
+        int nearbyStart = Math.max(0, position - NEARBY_RANGE);
+        String nearbyText = text == null || position < 0 ? null : text.subSequence(nearbyStart, Math.min(text.length(), position + NEARBY_RANGE)).toString();
         int id = mExecuteId.incrementAndGet();
         mExecutorService.execute(() -> {
             if (id != mExecuteId.get())
                 return;
-            List<CodeCompletion> completions = findCodeCompletion(module, prefill);
+            List<CodeCompletion> completions = findCodeCompletion(module, prefill, nearbyText, position - nearbyStart);
             CodeCompletions codeCompletions = new CodeCompletions(cursor, completions);
             if (id != mExecuteId.get())
                 return;
@@ -132,9 +140,9 @@ public class AutoCompletion {
         }
     }
 
-    private List<CodeCompletion> findCodeCompletion(Module module, String propertyPrefill) {
+    private List<CodeCompletion> findCodeCompletion(Module module, String propertyPrefill, String nearbyText, int cursor) {
         if (module == null)
-            return findCodeCompletionForGlobal(propertyPrefill);
+            return findCodeCompletionForGlobal(propertyPrefill, nearbyText, cursor);
         return findCodeCompletionForModule(module, propertyPrefill);
     }
 
@@ -149,7 +157,7 @@ public class AutoCompletion {
         return completions;
     }
 
-    private List<CodeCompletion> findCodeCompletionForGlobal(String propertyPrefill) {
+    private List<CodeCompletion> findCodeCompletionForGlobal(String propertyPrefill, String nearbyText, int cursor) {
         if (propertyPrefill == null)
             return Collections.emptyList();
         List<CodeCompletion> completions = new ArrayList<>();
@@ -158,7 +166,7 @@ public class AutoCompletion {
             Property property = entry.tag;
             completions.add(new CodeCompletion(property.getKey(), property.getUrl(), propertyPrefill.length()));
         }
-        mAnyWordsCompletion.findCodeCompletion(completions, propertyPrefill);
+        mAnyWordsCompletion.findCodeCompletion(completions, propertyPrefill, nearbyText, cursor);
         return completions;
     }
 
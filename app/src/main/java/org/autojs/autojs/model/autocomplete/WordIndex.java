@@ -0,0 +1,157 @@
+package org.autojs.autojs.model.autocomplete;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Word frequency index kept as sorted arrays of words and counts, where words with a prefix are found by binary search.
+ * <p>
+ * It is not thread-safe, and is meant to be confined to a single thread.
+ * </p>
+ */
+public class WordIndex {
+
+    // Above this number of distinct words, an update is merged into the arrays in one pass instead of word by word.
+    private static final int MERGE_THRESHOLD = 64;
+
+    private static final int FAR = 1 << 30;
+
+    private String[] mWords = new String[256];
+    private int[] mCounts = new int[256];
+    private int mSize;
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getCount(String word) {
+        int i = Arrays.binarySearch(mWords, 0, mSize, word);
+        return i >= 0 ? mCounts[i] : 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mWords, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Add the count changes of words, where words whose count drops to zero are removed.
+     */
+    public void update(Map<String, Integer> deltas) {
+        if (deltas.size() <= MERGE_THRESHOLD) {
+            for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+                update(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        String[] keys = deltas.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        String[] words = new String[Math.max(mSize + keys.length, 256)];
+        int[] counts = new int[words.length];
+        int i = 0, j = 0, n = 0;
+        while (i < mSize || j < keys.length) {
+            int c = i == mSize ? 1 : j == keys.length ? -1 : mWords[i].compareTo(keys[j]);
+            String word;
+            int count;
+            if (c < 0) {
+                word = mWords[i];
+                count = mCounts[i++];
+            } else if (c > 0) {
+                word = keys[j];
+                count = deltas.get(keys[j++]);
+            } else {
+                word = mWords[i];
+                count = mCounts[i++] + deltas.get(keys[j++]);
+            }
+            if (count > 0) {
+                words[n] = word;
+                counts[n++] = count;
+            }
+        }
+        mWords = words;
+        mCounts = counts;
+        mSize = n;
+    }
+
+    public void update(String word, int delta) {
+        int i = Arrays.binarySearch(mWords, 0, mSize, word);
+        if (i >= 0) {
+            mCounts[i] += delta;
+            if (mCounts[i] <= 0) {
+                System.arraycopy(mWords, i + 1, mWords, i, mSize - i - 1);
+                System.arraycopy(mCounts, i + 1, mCounts, i, mSize - i - 1);
+                mWords[--mSize] = null;
+            }
+            return;
+        }
+        if (delta <= 0) {
+            return;
+        }
+        i = -i - 1;
+        if (mSize == mWords.length) {
+            mWords = Arrays.copyOf(mWords, mSize * 2);
+            mCounts = Arrays.copyOf(mCounts, mSize * 2);
+        }
+        System.arraycopy(mWords, i, mWords, i + 1, mSize - i);
+        System.arraycopy(mCounts, i, mCounts, i + 1, mSize - i);
+        mWords[i] = word;
+        mCounts[i] = delta;
+        mSize++;
+    }
+
+    /**
+     * Words starting with the prefix, ranked first by distance for words in the given map, then by count.
+     *
+     * @param distances distances of words near the cursor from it, or null if unknown
+     * @param exclude   word not to return if it occurs only once, which is the word being typed
+     */
+    @NonNull
+    public List<String> search(String prefix, @Nullable Map<String, Integer> distances, @Nullable String exclude, int limit) {
+        int from = lowerBound(prefix);
+        int to = from;
+        while (to < mSize && mWords[to].startsWith(prefix)) {
+            to++;
+        }
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        // Rank in the high half and index in the low half, so that sorting keeps words of the same rank in order.
+        long[] keys = new long[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (mCounts[i] == 1 && mWords[i].equals(exclude)) {
+                continue;
+            }
+            Integer distance = distances == null ? null : distances.get(mWords[i]);
+            long rank = distance != null ? distance : FAR + (FAR - 1 - Math.min(mCounts[i], FAR - 1));
+            keys[n++] = rank << 32 | i;
+        }
+        Arrays.sort(keys, 0, n);
+        List<String> words = new ArrayList<>(Math.min(n, limit));
+        for (int k = 0; k < n && k < limit; k++) {
+            words.add(mWords[(int) keys[k]]);
+        }
+        return words;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mWords[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -17,6 +17,7 @@ import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
+import java.nio.channels.FileChannel
 import java.nio.charset.Charset
 import kotlin.math.ln
 import kotlin.math.pow
@@ -263,16 +264,38 @@ object PFiles {
         }
     }
 
+    /**
+     * Copy with [FileChannel.transferTo], which lets the kernel move the data without passing it through the heap.
+     */
     @JvmStatic
     fun copy(pathFrom: String?, pathTo: String): Boolean {
+        if (!ensureDir(pathTo)) return false
         return try {
-            copyStream(FileInputStream(pathFrom), pathTo)
-        } catch (e: FileNotFoundException) {
+            FileInputStream(pathFrom).channel.use { from ->
+                FileOutputStream(pathTo).channel.use { to ->
+                    val size = from.size()
+                    var position = 0L
+                    while (position < size) {
+                        val n = from.transferTo(position, size - position, to)
+                        if (n <= 0) break
+                        position += n
+                    }
+                }
+            }
+            true
+        } catch (e: IOException) {
             e.printStackTrace()
             false
         }
     }
 
+    @JvmStatic
+    fun map(path: String) = PMappedFile(path)
+
+    @JvmStatic
+    @JvmOverloads
+    fun lines(path: String, encoding: String? = DEFAULT_ENCODING, bufferSize: Int? = DEFAULT_BUFFER_SIZE) = PLineIterator(path, encoding ?: DEFAULT_ENCODING, bufferSize ?: DEFAULT_BUFFER_SIZE)
+
     fun copyAsset(context: Context, assetFile: String?, path: String): Boolean {
         return try {
             copyStream(context.assets.open(assetFile!!), path)
@@ -0,0 +1,94 @@
+package org.autojs.autojs.pio;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over lines of a text file, which holds only a buffer of the given size and the current line,
+ * so files of any size can be processed with constant memory.
+ * The file is closed when the last line has been read, or by {@link #close()} if iteration stops early.
+ */
+public class PLineIterator implements Iterator<String>, Closeable, PFileInterface {
+
+    private final String mPath;
+    private final BufferedReader mReader;
+    private String mNextLine;
+    private long mLineNumber = 0;
+    private boolean mClosed = false;
+
+    public PLineIterator(String path) {
+        this(path, PFiles.DEFAULT_ENCODING, PFiles.DEFAULT_BUFFER_SIZE);
+    }
+
+    public PLineIterator(String path, String encoding, int bufferSize) {
+        mPath = path;
+        try {
+            mReader = new BufferedReader(new InputStreamReader(new FileInputStream(path), encoding), bufferSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mNextLine != null) {
+            return true;
+        }
+        if (mClosed) {
+            return false;
+        }
+        try {
+            mNextLine = mReader.readLine();
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+        if (mNextLine == null) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String line = mNextLine;
+        mNextLine = null;
+        mLineNumber++;
+        return line;
+    }
+
+    /**
+     * @return number of lines returned by {@link #next()} so far
+     */
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            mReader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return mPath;
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.autojs.autojs.pio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory-mapped view of a file, which reads any part of a large file
+ * without loading it into the heap, as pages are loaded by the system on access.
+ * <p>
+ * Files larger than {@link #SEGMENT_SIZE} are mapped in segments, as a single mapping is limited to 2 GB.
+ * </p>
+ */
+public class PMappedFile implements Closeable, PFileInterface {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private final String mPath;
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer[] mSegments;
+    private final long mLength;
+
+    public PMappedFile(String path) {
+        mPath = path;
+        try {
+            mFile = new RandomAccessFile(path, "r");
+            FileChannel channel = mFile.getChannel();
+            mLength = channel.size();
+            mSegments = new MappedByteBuffer[(int) ((mLength + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < mSegments.length; i++) {
+                long position = (long) i << SEGMENT_SHIFT;
+                mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, mLength - position));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return the byte at the position, as an unsigned value from 0 to 255
+     */
+    public int get(long position) {
+        checkRange(position, 1);
+        return mSegments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_SIZE - 1))) & 0xFF;
+    }
+
+    public byte[] read(long position, int length) {
+        checkRange(position, length);
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            long current = position + offset;
+            MappedByteBuffer segment = mSegments[(int) (current >>> SEGMENT_SHIFT)].duplicate();
+            int start = (int) (current & (SEGMENT_SIZE - 1));
+            int n = Math.min(length - offset, segment.capacity() - start);
+            segment.position(start);
+            segment.get(bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+
+    public String readText(long position, int length) {
+        return readText(position, length, PFiles.DEFAULT_ENCODING);
+    }
+
+    public String readText(long position, int length, String encoding) {
+        try {
+            return new String(read(position, length), encoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return position of the first occurrence of the byte from the position, or -1 if not found
+     */
+    public long indexOf(int b, long from) {
+        byte target = (byte) b;
+        for (long position = Math.max(from, 0); position < mLength; ) {
+            MappedByteBuffer segment = mSegments[(int) (position >>> SEGMENT_SHIFT)];
+            int start = (int) (position & (SEGMENT_SIZE - 1));
+            int end = segment.capacity();
+            for (int i = start; i < end; i++) {
+                if (segment.get(i) == target) {
+                    return position + (i - start);
+                }
+            }
+            position += end - start;
+        }
+        return -1;
+    }
+
+    private void checkRange(long position, int length) {
+        if (position < 0 || length < 0 || position + length > mLength) {
+            throw new IndexOutOfBoundsException("position: " + position + ", length: " + length + ", file length: " + mLength);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return mPath;
+    }
+
+}
@@ -11,7 +11,6 @@ import com.google.gson.JsonObject;
 
 import org.autojs.autojs.AutoJs;
 import org.autojs.autojs.execution.ScriptExecution;
-import org.autojs.autojs.io.Zip;
 import org.autojs.autojs.model.script.Scripts;
 import org.autojs.autojs.pio.PFiles;
 import org.autojs.autojs.project.ProjectLauncher;
@@ -21,12 +20,13 @@ import org.autojs.autojs.util.ViewUtils;
 import org.autojs.autojs.util.WorkingDirectoryUtils;
 import org.autojs.autojs6.R;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -38,6 +38,7 @@ import io.reactivex.schedulers.Schedulers;
 public class DevPluginResponseHandler implements Handler {
 
     private final Context mContext;
+    private final DevPluginService mService;
     public static final String TYPE_COMMAND = DevPluginService.TYPE_COMMAND;
     public static final String TYPE_BYTES_COMMAND = DevPluginService.TYPE_BYTES_COMMAND;
 
@@ -45,10 +46,12 @@ public class DevPluginResponseHandler implements Handler {
 
     private final HashMap<String, ScriptExecution> mScriptExecutions = new HashMap<>();
     private final File mCacheDir;
+    private final ProjectSync mProjectSync = new ProjectSync();
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
-    public DevPluginResponseHandler(Context context, File cacheDir) {
-        mContext = context;
+    public DevPluginResponseHandler(DevPluginService service, File cacheDir) {
+        mService = service;
+        mContext = service.getContext();
         mCacheDir = cacheDir;
         if (cacheDir.exists()) {
             if (cacheDir.isDirectory()) {
@@ -81,6 +84,10 @@ public class DevPluginResponseHandler implements Handler {
                         .handler("stopAll", data -> {
                             AutoJs.getInstance().getScriptEngineService().stopAllAndToast();
                             return true;
+                        })
+                        .handler("sync_manifest", data -> {
+                            sendProjectManifest(data.get("id").getAsString());
+                            return true;
                         }))
                 .handler(TYPE_BYTES_COMMAND, new Router("bytes_command")
                         .handler("run_project", data -> {
@@ -104,13 +111,39 @@ public class DevPluginResponseHandler implements Handler {
         return Observable
                 .fromCallable(() -> {
                     File dir = new File(mCacheDir, idMd5);
-                    byte[] byteArray = bytes.byteString.toByteArray();
-                    Zip.unzip(new ByteArrayInputStream(byteArray), dir);
+                    try {
+                        JsonElement deleted = data.get("data").getAsJsonObject().get("deleted");
+                        if (deleted != null && deleted.isJsonArray()) {
+                            // Incremental sync, the bytes are a zip of changed files only.
+                            List<String> deletedPaths = new ArrayList<>();
+                            for (JsonElement path : deleted.getAsJsonArray()) {
+                                deletedPaths.add(path.getAsString());
+                            }
+                            mProjectSync.apply(dir, bytes.openStream(), deletedPaths);
+                        } else {
+                            mProjectSync.unzip(dir, bytes.openStream());
+                        }
+                    } finally {
+                        bytes.release();
+                    }
                     return dir;
                 })
                 .subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Send the manifest of the cached project to the desktop extension,
+     * which replies with a zip of changed files and a list of deleted ones (see {@link ProjectSync}).
+     */
+    @SuppressLint("CheckResult")
+    private void sendProjectManifest(String id) {
+        File dir = new File(mCacheDir, MD5Utils.md5(id));
+        Observable
+                .fromCallable(() -> mProjectSync.manifest(dir))
+                .subscribeOn(Schedulers.io())
+                .subscribe(files -> mService.sendProjectManifest(id, files), Throwable::printStackTrace);
+    }
+
     private void runScript(Context mContext, String viewId, String name, String script) {
         if (TextUtils.isEmpty(name)) {
             name = "[" + viewId + "]";
@@ -2,6 +2,7 @@ package org.autojs.autojs.pluginclient
 
 import android.content.Context
 import androidx.annotation.AnyThread
+import com.google.gson.JsonObject
 import io.reactivex.Observable
 import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.PublishSubject
@@ -38,7 +39,7 @@ class DevPluginService(val context: Context) {
 
     }
 
-    val responseHandler = DevPluginResponseHandler(context, File(context.cacheDir, "remote_project"))
+    val responseHandler = DevPluginResponseHandler(this, File(context.cacheDir, "remote_project"))
 
     @get:ScriptInterface
     @Volatile
@@ -188,10 +189,17 @@ class DevPluginService(val context: Context) {
         jsonSocketServer?.writeLog(log)
     }
 
+    @AnyThread
+    fun sendProjectManifest(id: String, files: JsonObject) {
+        jsonSocketClient?.writeProjectManifest(id, files)
+        jsonSocketServer?.writeProjectManifest(id, files)
+    }
+
     companion object {
         const val TYPE_HELLO = "hello"
         const val TYPE_COMMAND = "command"
         const val TYPE_BYTES_COMMAND = "bytes_command"
+        const val TYPE_PROJECT_MANIFEST = "project_manifest"
         fun setState(cxn: PublishSubject<State?>, state: Int) {
             cxn.onNext(State(state))
         }
@@ -0,0 +1,239 @@
+package org.autojs.autojs.pluginclient;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okio.ByteString;
+
+/**
+ * Reads frames sent by the desktop extension directly from the bytes of the socket stream.
+ * <p>
+ * A frame starts with a header of {@link JsonSocket#HEADER_SIZE} ASCII chars, where the digits of the first part
+ * are the data length, and the digits of the last two chars are the data type.
+ * The data is encoded in UTF-8 and its length is counted in UTF-16 units,
+ * so a bytes message carries each byte as a char from U+0000 to U+00FF.
+ * </p>
+ * <p>
+ * With the length known from the header, JSON data is decoded into a char buffer of that size,
+ * and bytes data is decoded into a byte array of that size, or into a temporary file if it is larger than
+ * {@link #MAX_IN_MEMORY_BYTES}, so memory used by a transfer is bounded whatever the size of the project.
+ * </p>
+ */
+class FrameReader {
+
+    static final int MAX_IN_MEMORY_BYTES = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TYPE_SIZE = 2;
+
+    static class Frame {
+
+        final int type;
+        final int length;
+
+        @Nullable
+        String json;
+
+        @Nullable
+        JsonSocket.Bytes bytes;
+
+        Frame(int type, int length) {
+            this.type = type;
+            this.length = length;
+        }
+
+    }
+
+    private final InputStream mInputStream;
+    private final File mTempDir;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] mChunk = new byte[BUFFER_SIZE];
+    private final CharsetDecoder mDecoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    FrameReader(InputStream inputStream, File tempDir) {
+        mInputStream = inputStream;
+        mTempDir = tempDir;
+        mBuffer.flip();
+    }
+
+    /**
+     * Read the next frame, blocking until it is complete.
+     *
+     * @return null if the stream ends between frames
+     * @throws EOFException if the stream ends within a frame
+     */
+    @Nullable
+    Frame next() throws IOException {
+        if (!require(JsonSocket.HEADER_SIZE)) {
+            if (mBuffer.hasRemaining()) {
+                throw new EOFException("Stream ended within a frame header");
+            }
+            return null;
+        }
+        int length = parseDigits(JsonSocket.HEADER_SIZE - TYPE_SIZE);
+        int type = parseDigits(TYPE_SIZE);
+        Frame frame = new Frame(type, length);
+        if (type == JsonSocket.Type.JSON) {
+            frame.json = readText(length);
+        } else if (type == JsonSocket.Type.BYTES) {
+            frame.bytes = readBytes(length);
+        } else {
+            skipText(length);
+        }
+        return frame;
+    }
+
+    private int parseDigits(int size) {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            int b = mBuffer.get();
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            }
+        }
+        return value;
+    }
+
+    private String readText(int length) throws IOException {
+        CharBuffer chars = CharBuffer.allocate(length);
+        mDecoder.reset();
+        while (chars.hasRemaining()) {
+            CoderResult result = mDecoder.decode(mBuffer, chars, false);
+            if (!chars.hasRemaining()) {
+                // The decoder reports underflow when the input runs out as the output fills,
+                // and the next frame may not have been sent yet.
+                break;
+            }
+            if (result.isOverflow()) {
+                // A surrogate pair does not fit in the last unit, which means a wrong length from the header.
+                break;
+            }
+            if (result.isUnderflow() && !fill()) {
+                throw new EOFException("Stream ended within a JSON frame");
+            }
+        }
+        chars.flip();
+        return chars.toString();
+    }
+
+    private void skipText(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            remaining -= decodeBytes(mChunk, Math.min(remaining, mChunk.length));
+        }
+    }
+
+    private JsonSocket.Bytes readBytes(int length) throws IOException {
+        MessageDigest digest = newMd5Digest();
+        if (length <= MAX_IN_MEMORY_BYTES) {
+            byte[] data = new byte[length];
+            int count = 0;
+            while (count < length) {
+                int n = decodeBytes(mChunk, Math.min(length - count, mChunk.length));
+                System.arraycopy(mChunk, 0, data, count, n);
+                count += n;
+            }
+            digest.update(data);
+            return new JsonSocket.Bytes(ByteString.of(digest.digest()).hex(), data);
+        }
+        File file = File.createTempFile("bytes-", ".tmp", mTempDir);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+            int count = 0;
+            while (count < length) {
+                int n = decodeBytes(mChunk, Math.min(length - count, mChunk.length));
+                digest.update(mChunk, 0, n);
+                os.write(mChunk, 0, n);
+                count += n;
+            }
+        } catch (IOException e) {
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        return new JsonSocket.Bytes(ByteString.of(digest.digest()).hex(), file, length);
+    }
+
+    /**
+     * Decode UTF-8 chars into bytes (one byte per char from U+0000 to U+00FF), as many as buffered up to count,
+     * reading from the stream only if nothing is buffered. Chars out of the range are decoded as '?'.
+     *
+     * @return number of bytes decoded, which is at least 1 for a positive count
+     */
+    private int decodeBytes(byte[] dst, int count) throws IOException {
+        int n = 0;
+        while (n < count) {
+            if (!mBuffer.hasRemaining()) {
+                if (n > 0) {
+                    break;
+                }
+                if (!fill()) {
+                    throw new EOFException("Stream ended within a bytes frame");
+                }
+            }
+            int b = mBuffer.get(mBuffer.position()) & 0xFF;
+            if (b < 0x80) {
+                mBuffer.get();
+                dst[n++] = (byte) b;
+                continue;
+            }
+            int sequenceLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            if (!require(sequenceLength)) {
+                throw new EOFException("Stream ended within a bytes frame");
+            }
+            if (sequenceLength == 2 && b <= 0xC3) {
+                int next = mBuffer.get(mBuffer.position() + 1) & 0x3F;
+                dst[n++] = (byte) (((b & 0x1F) << 6) | next);
+            } else {
+                dst[n++] = '?';
+            }
+            mBuffer.position(mBuffer.position() + sequenceLength);
+        }
+        return n;
+    }
+
+    private boolean require(int size) throws IOException {
+        while (mBuffer.remaining() < size) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        mBuffer.compact();
+        int n = mInputStream.read(mBuffer.array(), mBuffer.position(), mBuffer.remaining());
+        if (n > 0) {
+            mBuffer.position(mBuffer.position() + n);
+        }
+        mBuffer.flip();
+        return n > 0;
+    }
+
+    private static MessageDigest newMd5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -1,6 +1,5 @@
 package org.autojs.autojs.pluginclient;
 
-import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import android.annotation.SuppressLint;
@@ -30,17 +29,15 @@ import org.autojs.autojs6.R;
 import org.mozilla.javascript.NativeObject;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.Socket;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -49,7 +46,6 @@ import java.util.concurrent.Executors;
 
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.subjects.PublishSubject;
-import okio.ByteString;
 
 abstract public class JsonSocket extends Socket {
 
@@ -83,14 +79,44 @@ abstract public class JsonSocket extends Socket {
 
     public static class Bytes {
         public final String md5;
-        public final ByteString byteString;
+        public final long length;
         public final long timestamp;
 
-        public Bytes(String md5, ByteString byteString) {
+        @Nullable
+        private final byte[] data;
+
+        @Nullable
+        private final File file;
+
+        public Bytes(String md5, @NonNull byte[] data) {
+            this(md5, data, null, data.length);
+        }
+
+        public Bytes(String md5, @NonNull File file, long length) {
+            this(md5, null, file, length);
+        }
+
+        private Bytes(String md5, @Nullable byte[] data, @Nullable File file, long length) {
             this.md5 = md5;
-            this.byteString = byteString;
+            this.data = data;
+            this.file = file;
+            this.length = length;
             this.timestamp = System.currentTimeMillis();
         }
+
+        public InputStream openStream() throws IOException {
+            return file != null ? new FileInputStream(file) : new ByteArrayInputStream(data);
+        }
+
+        /**
+         * Delete the temporary file holding the data (if any), after which the data can not be read any more.
+         */
+        @SuppressWarnings("ResultOfMethodCallIgnored")
+        public void release() {
+            if (file != null) {
+                file.delete();
+            }
+        }
     }
 
     public static class Type {
@@ -175,63 +201,23 @@ abstract public class JsonSocket extends Socket {
         dispatchJson(text);
     }
 
-    public void onMessage(ByteString bytes) {
-        Log.d(TAG, "onMessage: ByteArray = " + Arrays.toString(bytes.toByteArray()));
-        Log.d(TAG, "bytes md5 hex: " + bytes.md5().hex());
+    public void onMessage(Bytes bytes) {
+        Log.d(TAG, "onMessage: bytes length = " + bytes.length + ", md5 = " + bytes.md5);
 
         /* private void onSocketData(Bytes bytes) */
         if (mBytesPublishSubject != null) {
-            mBytesPublishSubject.onNext(new Bytes(bytes.md5().hex(), bytes));
+            mBytesPublishSubject.onNext(bytes);
         }
     }
 
-    private void onMessageDispatch(char[] bytes) {
-        Log.d(TAG, "Received message total bytes: " + Arrays.toString(bytes));
-        Log.d(TAG, "Received message total length: " + bytes.length);
-
-        char[] overload;
-
-        if (mFragment != null) {
-            overload = mFragment.splice(bytes);
+    private void onFrame(FrameReader.Frame frame) {
+        Log.d(TAG, "Received frame, length: " + frame.length + ", type: " + frame.type);
+        if (frame.json != null) {
+            onMessage(frame.json);
+        } else if (frame.bytes != null) {
+            onMessage(frame.bytes);
         } else {
-            String header = new String(Arrays.copyOfRange(bytes, 0, HEADER_SIZE));
-
-            int dataSize = parseHeaderInt(header, 0, HEADER_SIZE - 2);
-            Log.d(TAG, "Data length from header: " + dataSize);
-
-            int dataType = parseHeaderInt(header, HEADER_SIZE - 2, 2);
-            Log.d(TAG, "Data type from header: " + dataType);
-
-            mFragment = new Fragment(dataSize, dataType);
-            overload = mFragment.splice(Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length));
-        }
-
-        if (!mFragment.isRestored()) {
-            return;
-        }
-        char[] restored = mFragment.getRestoredBytes();
-        int type = mFragment.getAimDataType();
-        mFragment = null;
-
-        if (type == Type.JSON) {
-            onMessage(new String(charsToBytes(restored, UTF_8), UTF_8));
-        } else if (type == Type.BYTES) {
-            onMessage(ByteString.of(charsToBytes(restored, ISO_8859_1)));
-        } else {
-            ScriptRuntime.popException("Unknown data type (" + type + ") for message dispatching");
-        }
-
-        if (overload != null) {
-            onMessageDispatch(overload);
-        }
-    }
-
-    private static int parseHeaderInt(String header, int offset, int length) {
-        try {
-            return Integer.parseInt(new String(header.getBytes(UTF_8), offset, length).replaceAll("\\D", ""));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return 0;
+            ScriptRuntime.popException("Unknown data type (" + frame.type + ") for message dispatching");
         }
     }
 
@@ -276,6 +262,15 @@ abstract public class JsonSocket extends Socket {
         }
     }
 
+    public void writeProjectManifest(String id, JsonObject files) {
+        if (isSocketReady()) {
+            JsonObject data = new JsonObject();
+            data.addProperty("id", id);
+            data.add("files", files);
+            writeData(DevPluginService.TYPE_PROJECT_MANIFEST, data);
+        }
+    }
+
     private void writeData(String type, JsonObject data) {
         JsonObject json = new JsonObject();
 
@@ -315,20 +310,18 @@ abstract public class JsonSocket extends Socket {
         //  ! DO NOT use BufferedReader#readLine as it doesn't distinguish U+000A (\n) and U+000D (\r),
         //  ! which makes MD5 not matching the one from Node.js.
 
+        // Frames are decoded from raw socket bytes, see FrameReader for the format.
+
         executorService.execute(() -> {
             // try (AutoCloseable) { ... }
             // @Thank to Zen2H
-            try (InputStream inputStream = socket.getInputStream();
-                 InputStreamReader inputStreamReader = new InputStreamReader(inputStream, UTF_8);
-                 BufferedReader bufferedReader = new BufferedReader(inputStreamReader)
-            ) {
-                char[] buff = new char[2048];
-                int k;
-
-                Log.d(TAG, "bufferedReader is reading...");
-                while ((k = bufferedReader.read(buff, 0, buff.length)) > -1 && !socket.isClosed()) {
-                    Log.d(TAG, "read length: " + k);
-                    onMessageDispatch(Arrays.copyOfRange(buff, 0, k));
+            try (InputStream inputStream = socket.getInputStream()) {
+                FrameReader reader = new FrameReader(inputStream, mContext.getCacheDir());
+                FrameReader.Frame frame;
+
+                Log.d(TAG, "frame reader is reading...");
+                while ((frame = reader.next()) != null && !socket.isClosed()) {
+                    onFrame(frame);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -344,15 +337,6 @@ abstract public class JsonSocket extends Socket {
         });
     }
 
-    protected byte[] charsToBytes(char[] chars, Charset charset) {
-        CharBuffer charBuffer = CharBuffer.wrap(chars);
-        ByteBuffer byteBuffer = charset.encode(charBuffer);
-        byte[] bytes = Arrays.copyOfRange(byteBuffer.array(),
-                byteBuffer.position(), byteBuffer.limit());
-        Arrays.fill(byteBuffer.array(), (byte) 0); // clear sensitive data
-        return bytes;
-    }
-
     public void setState(PublishSubject<DevPluginService.State> cxn, int state) {
         cxn.onNext(new DevPluginService.State(state));
     }
@@ -407,54 +391,4 @@ abstract public class JsonSocket extends Socket {
         return buffer.array();
     }
 
-    private static class Fragment {
-
-        private final int aimLength;
-        private final int aimDataType;
-
-        private char[] bytes = new char[0];
-        private int currentLength = 0;
-
-        public Fragment(int aimLength, int aimDataType) {
-            this.aimLength = aimLength;
-            this.aimDataType = aimDataType;
-        }
-
-        public boolean isRestored() {
-            return currentLength >= aimLength;
-        }
-
-        public char[] splice(char[] charBytes) {
-            int tempLength = currentLength + charBytes.length;
-            if (tempLength <= aimLength) {
-                this.bytes = joinBytes(this.bytes, charBytes);
-                currentLength = currentLength + charBytes.length;
-                Log.d(TAG, "currentLength: " + currentLength + "/" + aimLength);
-                return null;
-            }
-            int overloadLength = tempLength - aimLength;
-            Log.w(TAG, "charBytes overloaded: " + overloadLength);
-            char[] leftPart = Arrays.copyOfRange(charBytes, 0, charBytes.length - overloadLength);
-            char[] rightPart = Arrays.copyOfRange(charBytes, charBytes.length - overloadLength, charBytes.length);
-
-            splice(leftPart);
-            return rightPart;
-        }
-
-        public char[] getRestoredBytes() {
-            return bytes;
-        }
-
-        public int getAimDataType() {
-            return aimDataType;
-        }
-
-        private static char[] joinBytes(final char[] array1, char[] array2) {
-            char[] joinedArray = Arrays.copyOf(array1, array1.length + array2.length);
-            System.arraycopy(array2, 0, joinedArray, array1.length, array2.length);
-            return joinedArray;
-        }
-
-    }
-
-}
\ No newline at end of file
+}
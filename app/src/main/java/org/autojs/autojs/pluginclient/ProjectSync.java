@@ -0,0 +1,254 @@
+package org.autojs.autojs.pluginclient;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonObject;
+
+import org.autojs.autojs.io.Zip;
+import org.autojs.autojs.pio.PFiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okio.ByteString;
+
+/**
+ * Incremental sync of remote projects cached on the device.
+ * <p>
+ * The desktop extension asks for a manifest of the cached project (relative paths and MD5 of files),
+ * then sends a zip with only the files added or changed since, along with the paths of deleted files.
+ * Changes are extracted into a staging directory first, and moved into the project only after
+ * the whole zip was extracted, so a broken transfer leaves the project as it was.
+ * Files replaced or deleted by the changes are moved aside into a backup directory until all the moves succeed,
+ * and moved back if one of them fails.
+ * </p>
+ * <p>
+ * Syncs of the same directory share the staging and backup directories, so they are serialized by a lock of the directory.
+ * </p>
+ */
+public class ProjectSync {
+
+    private static final String TAG = ProjectSync.class.getSimpleName();
+
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String BACKUP_SUFFIX = ".backup";
+
+    /**
+     * A path of the project changed by a sync, and where its previous file was moved to, if any.
+     */
+    private static class Move {
+
+        final File target;
+
+        @Nullable
+        final File backup;
+
+        // Whether a new file has been moved to the target.
+        boolean isPlaced;
+
+        Move(File target, @Nullable File backup) {
+            this.target = target;
+            this.backup = backup;
+        }
+
+    }
+
+    private static class HashEntry {
+
+        final long length;
+        final long lastModified;
+        final String md5;
+
+        HashEntry(long length, long lastModified, String md5) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.md5 = md5;
+        }
+
+    }
+
+    // Locks of project directories by path, which are few and kept for the process lifetime.
+    private static final ConcurrentHashMap<String, Object> sLocks = new ConcurrentHashMap<>();
+
+    // Hashes of unchanged files (by size and modification time) are not computed again for each manifest.
+    private final ConcurrentHashMap<String, HashEntry> mHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Relative paths (separated by '/') and MD5 of all the files in the directory,
+     * which is empty if the directory does not exist.
+     */
+    @NonNull
+    public JsonObject manifest(File dir) throws IOException {
+        synchronized (lockOf(dir)) {
+            JsonObject files = new JsonObject();
+            List<File> list = new ArrayList<>();
+            collectFiles(dir, list);
+            int prefixLength = dir.getPath().length() + 1;
+            for (File file : list) {
+                files.addProperty(file.getPath().substring(prefixLength).replace(File.separatorChar, '/'), md5(file));
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Extract a zip of the whole project into the directory, as a full sync does.
+     */
+    public void unzip(File dir, InputStream zip) throws IOException {
+        synchronized (lockOf(dir)) {
+            Zip.unzip(zip, dir);
+        }
+    }
+
+    /**
+     * Apply a zip of changed files and a list of deleted paths to the directory,
+     * which is left as it was if any of them cannot be applied.
+     */
+    public void apply(File dir, InputStream changes, Collection<String> deletedPaths) throws IOException {
+        synchronized (lockOf(dir)) {
+            applyLocked(dir, changes, deletedPaths);
+        }
+    }
+
+    private void applyLocked(File dir, InputStream changes, Collection<String> deletedPaths) throws IOException {
+        File stagingDir = new File(dir.getPath() + STAGING_SUFFIX);
+        File backupDir = new File(dir.getPath() + BACKUP_SUFFIX);
+        PFiles.deleteRecursively(stagingDir);
+        PFiles.deleteRecursively(backupDir);
+        List<Move> moves = new ArrayList<>();
+        try {
+            Zip.unzip(changes, stagingDir);
+            List<File> staged = new ArrayList<>();
+            collectFiles(stagingDir, staged);
+            List<File> deleted = new ArrayList<>();
+            for (String path : deletedPaths) {
+                File file = new File(dir, path);
+                checkInside(dir, file);
+                deleted.add(file);
+            }
+            // Parents first, so that files in a deleted directory are moved aside along with it.
+            Collections.sort(deleted, (a, b) -> Integer.compare(a.getPath().length(), b.getPath().length()));
+            int prefixLength = stagingDir.getPath().length() + 1;
+            for (File file : staged) {
+                String path = file.getPath().substring(prefixLength);
+                File target = new File(dir, path);
+                Move move = moveAside(target, new File(backupDir, path), moves);
+                PFiles.ensureDir(target.getPath());
+                move(file, target);
+                move.isPlaced = true;
+            }
+            for (File file : deleted) {
+                moveAside(file, new File(backupDir, file.getPath().substring(dir.getPath().length() + 1)), moves);
+            }
+        } catch (IOException | RuntimeException e) {
+            rollBack(moves);
+            throw e;
+        } finally {
+            PFiles.deleteRecursively(stagingDir);
+        }
+        for (Move move : moves) {
+            mHashes.remove(move.target.getPath());
+        }
+        PFiles.deleteRecursively(backupDir);
+    }
+
+    private static Object lockOf(File dir) {
+        return sLocks.computeIfAbsent(dir.getPath(), k -> new Object());
+    }
+
+    /**
+     * Move the file, if it exists, to the backup path, and record the move so it can be rolled back.
+     */
+    private static Move moveAside(File file, File backup, List<Move> moves) throws IOException {
+        Move move;
+        if (file.exists()) {
+            PFiles.ensureDir(backup.getPath());
+            move(file, backup);
+            move = new Move(file, backup);
+        } else {
+            move = new Move(file, null);
+        }
+        moves.add(move);
+        return move;
+    }
+
+    /**
+     * Undo the moves in reverse order, on a best-effort basis, as the original error is what is reported.
+     */
+    private static void rollBack(List<Move> moves) {
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            Move move = moves.get(i);
+            if (move.isPlaced) {
+                PFiles.deleteRecursively(move.target);
+            }
+            if (move.backup != null && !move.backup.renameTo(move.target)) {
+                Log.e(TAG, "Failed to restore " + move.target + " from " + move.backup);
+            }
+        }
+    }
+
+    private static void move(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Failed to move " + from + " to " + to);
+        }
+    }
+
+    private String md5(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        HashEntry entry = mHashes.get(file.getPath());
+        if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+            return entry.md5;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        String md5 = ByteString.of(digest.digest()).hex();
+        mHashes.put(file.getPath(), new HashEntry(length, lastModified, md5));
+        return md5;
+    }
+
+    private static void collectFiles(File dir, List<File> out) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectFiles(file, out);
+            } else {
+                out.add(file);
+            }
+        }
+    }
+
+    private static void checkInside(File dir, File file) throws IOException {
+        String dirPath = dir.getCanonicalPath() + File.separator;
+        if (!file.getCanonicalPath().startsWith(dirPath)) {
+            throw new IOException("Path is out of the project: " + file);
+        }
+    }
+
+}
@@ -10,6 +10,8 @@ import com.google.gson.Gson
 import org.autojs.autojs.App.Companion.app
 import org.autojs.autojs.annotation.KeyRes
 import org.autojs.autojs.app.GlobalAppContext
+import org.autojs.autojs.engine.ScriptEnginePool
+import org.autojs.autojs.engine.ScriptEngineService
 import org.autojs.autojs.runtime.accessibility.AccessibilityConfig
 import org.autojs.autojs.util.NetworkUtils
 import org.autojs.autojs.util.RootUtils
@@ -36,6 +38,12 @@ object Pref {
         if (key == key(R.string.key_guard_mode)) {
             AccessibilityConfig.refreshUnintendedGuardState()
         }
+        if (key == key(R.string.key_engine_pool_size)) {
+            ScriptEngineService.getInstance()?.enginePool?.refill()
+        } else if (ScriptEnginePool.INIT_SCRIPT_PREF_KEYS.any { key == key(it) }) {
+            // Pre-warmed engines ran init script with the settings of that time.
+            ScriptEngineService.getInstance()?.enginePool?.invalidate()
+        }
     }
 
     init {
@@ -73,6 +81,21 @@ object Pref {
             resources.getBoolean(R.bool.pref_extending_js_build_in_objects),
         )
 
+    @JvmStatic
+    val isLazyGlobalModulesEnabled
+        get() = getBoolean(
+            R.string.key_lazy_global_modules,
+            resources.getBoolean(R.bool.pref_lazy_global_modules),
+        )
+
+    @JvmStatic
+    val enginePoolSize
+        get() = getString(R.string.key_engine_pool_size, key(R.string.default_key_engine_pool_size))?.toIntOrNull() ?: 0
+
+    @JvmStatic
+    val enginePoolIdleTimeout
+        get() = getString(R.string.key_engine_pool_idle_timeout, key(R.string.default_key_engine_pool_idle_timeout))?.toLongOrNull() ?: 0L
+
     @JvmStatic
     val isGuardModeEnabled
         get() = getBoolean(
@@ -59,6 +59,9 @@ public class ProjectConfig {
     @SerializedName("useFeatures")
     private List<String> mFeatures = new ArrayList<>();
 
+    @SerializedName("optimizationLevel")
+    private Integer mOptimizationLevel;
+
 
     public static ProjectConfig fromJson(String json) {
         if (json == null) {
@@ -232,11 +235,22 @@ public class ProjectConfig {
         mFeatures = features;
     }
 
+    public Integer getOptimizationLevel() {
+        return mOptimizationLevel;
+    }
+
+    public void setOptimizationLevel(Integer optimizationLevel) {
+        mOptimizationLevel = optimizationLevel;
+    }
+
     public ScriptConfig getScriptConfig(String path) {
         ScriptConfig config = mScriptConfigs.get(path);
         if (config == null) {
             config = new ScriptConfig();
         }
+        if (config.getOptimizationLevel() == null) {
+            config.setOptimizationLevel(mOptimizationLevel);
+        }
         if (mFeatures.isEmpty()) {
             return config;
         }
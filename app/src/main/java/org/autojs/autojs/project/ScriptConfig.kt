@@ -4,7 +4,11 @@ import com.google.gson.annotations.SerializedName
 
 data class ScriptConfig(
         @SerializedName("useFeatures") var features: List<String>,
-        @SerializedName("uiMode") var uiMode: Boolean
+        @SerializedName("uiMode") var uiMode: Boolean,
+        /**
+         * Rhino optimization level from -1 (interpreter) to 9 (compiled with all optimizations), null to inherit.
+         */
+        @SerializedName("optimizationLevel") var optimizationLevel: Int? = null
 ) {
     constructor() : this(emptyList(), false)
 
@@ -15,4 +19,4 @@ data class ScriptConfig(
     companion object {
         const val FEATURE_CONTINUATION = "continuation"
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package org.autojs.autojs.rhino
+
+import android.util.Log
+import com.android.dx.command.dexer.Main
+import dalvik.system.DexClassLoader
+import org.autojs.autojs.app.GlobalAppContext
+import org.mozilla.javascript.CompilerEnvirons
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.optimizer.ClassCompiler
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * On-disk cache of scripts compiled to dex by Rhino class generation (optimization level 0 to 9).
+ *
+ * Classes are named after the content hash and optimization level instead of Rhino's per-process serial,
+ * so that a dex file generated once can be loaded again by later executions and after restarts of the app.
+ * Least recently used files are deleted when the total size exceeds [MAX_CACHE_SIZE].
+ */
+object DexScriptCache {
+
+    private val TAG = DexScriptCache::class.java.simpleName
+
+    private const val MAX_CACHE_SIZE = 32L * 1024 * 1024
+
+    private const val CLASS_NAME_PREFIX = "org.autojs.autojs.gen.Script_"
+
+    private val cacheDir by lazy { File(GlobalAppContext.get().codeCacheDir, "rhino-dex").apply { mkdirs() } }
+
+    /**
+     * Load the compiled script of [source] with the optimization level of [context], generating and caching it if needed.
+     *
+     * @param hash content hash of [source], used as the cache key together with the optimization level
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun load(context: Context, path: String, source: String, hash: String): Script {
+        val level = context.optimizationLevel
+        val className = "$CLASS_NAME_PREFIX${hash}_$level"
+        val dexFile = File(cacheDir, "$hash-$level.jar")
+        synchronized(this) {
+            if (dexFile.exists()) {
+                dexFile.setLastModified(System.currentTimeMillis())
+            } else {
+                generate(context, path, source, className, dexFile)
+                trim()
+            }
+        }
+        val loader = DexClassLoader(dexFile.path, cacheDir.path, null, Context::class.java.classLoader)
+        return try {
+            loader.loadClass(className).getDeclaredConstructor().newInstance() as Script
+        } catch (e: ReflectiveOperationException) {
+            dexFile.delete()
+            throw IOException(e)
+        }
+    }
+
+    @JvmStatic
+    fun clear() = synchronized(this) {
+        cacheDir.listFiles()?.forEach { it.delete() }
+    }
+
+    private fun generate(context: Context, path: String, source: String, className: String, dexFile: File) {
+        val start = System.currentTimeMillis()
+        val compilerEnv = CompilerEnvirons().apply { initFromContext(context) }
+        val classes = ClassCompiler(compilerEnv).compileToClassFiles(source, path, 1, className)
+        val classFile = File(cacheDir, "${dexFile.name}.classes")
+        val tempDexFile = File(cacheDir, "${dexFile.name}.tmp")
+        try {
+            ZipOutputStream(FileOutputStream(classFile)).use { zip ->
+                for (i in classes.indices step 2) {
+                    zip.putNextEntry(ZipEntry((classes[i] as String).replace('.', '/') + ".class"))
+                    zip.write(classes[i + 1] as ByteArray)
+                    zip.closeEntry()
+                }
+            }
+            val arguments = Main.Arguments().apply {
+                fileNames = arrayOf(classFile.path)
+                outName = tempDexFile.path
+                jarOutput = true
+            }
+            if (Main.run(arguments) != 0) {
+                throw IOException("Failed to convert classes of $path to dex")
+            }
+            if (!tempDexFile.renameTo(dexFile)) {
+                throw IOException("Failed to rename ${tempDexFile.path} to ${dexFile.path}")
+            }
+            // Dynamically loaded code must not be writable on Android 14 and above.
+            dexFile.setReadOnly()
+        } finally {
+            classFile.delete()
+            tempDexFile.delete()
+        }
+        Log.d(TAG, "generated $className for $path in ${System.currentTimeMillis() - start} ms")
+    }
+
+    private fun trim() {
+        val files = cacheDir.listFiles { file -> file.name.endsWith(".jar") }?.sortedBy { it.lastModified() } ?: return
+        var total = files.sumOf { it.length() }
+        for (file in files) {
+            if (total <= MAX_CACHE_SIZE) {
+                break
+            }
+            total -= file.length()
+            file.delete()
+        }
+    }
+
+}
@@ -564,6 +564,7 @@ public class ScriptRuntime {
 
         ignoresException(threads::shutDownAll);
         ignoresException(events::recycle);
+        ignoresException(files::recycle);
         ignoresException(media::recycle);
         ignoresException(loopers::recycle);
         ignoresException(this::recycleShell);
@@ -1,7 +1,9 @@
 package org.autojs.autojs.runtime.api;
 
 import org.autojs.autojs.engine.JavaScriptEngine;
+import org.autojs.autojs.engine.ScriptCache;
 import org.autojs.autojs.engine.ScriptEngine;
+import org.autojs.autojs.engine.ScriptEnginePool;
 import org.autojs.autojs.engine.ScriptEngineService;
 import org.autojs.autojs.execution.ExecutionConfig;
 import org.autojs.autojs.execution.ScriptExecution;
@@ -66,4 +68,12 @@ public class Engines {
         return mScriptEngine;
     }
 
+    public ScriptCache getScriptCache() {
+        return ScriptCache.INSTANCE;
+    }
+
+    public ScriptEnginePool getEnginePool() {
+        return mEngineService.getEnginePool();
+    }
+
 }
@@ -2,13 +2,19 @@ package org.autojs.autojs.runtime.api;
 
 import org.autojs.autojs.pio.PFileInterface;
 import org.autojs.autojs.pio.PFiles;
+import org.autojs.autojs.pio.PLineIterator;
+import org.autojs.autojs.pio.PMappedFile;
 import org.autojs.autojs.pio.UncheckedIOException;
 import org.autojs.autojs.runtime.ScriptRuntime;
 import org.autojs.autojs.tool.Func1;
 import org.autojs.autojs.util.EnvironmentUtils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Created by Stardust on 2018/1/23.
@@ -17,6 +23,10 @@ public class Files {
 
     private final ScriptRuntime mRuntime;
 
+    // Line iterators and mapped files are closed when the script exits, as a for-of loop which breaks
+    // does not close the former, and scripts may forget to close the latter.
+    private final Set<Closeable> mOpenFiles = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
     public Files(ScriptRuntime runtime) {
         mRuntime = runtime;
     }
@@ -134,6 +144,40 @@ public class Files {
         return PFiles.copy(path(pathFrom), path(pathTo));
     }
 
+    public PMappedFile map(String path) {
+        return track(PFiles.map(path(path)));
+    }
+
+    public PLineIterator lines(String path, String encoding, int bufferSize) {
+        return track(PFiles.lines(path(path), encoding, bufferSize));
+    }
+
+    public PLineIterator lines(String path, String encoding) {
+        return track(PFiles.lines(path(path), encoding));
+    }
+
+    public PLineIterator lines(String path) {
+        return track(PFiles.lines(path(path)));
+    }
+
+    private <T extends Closeable> T track(T file) {
+        mOpenFiles.add(file);
+        return file;
+    }
+
+    public void recycle() {
+        synchronized (mOpenFiles) {
+            for (Closeable file : mOpenFiles) {
+                try {
+                    file.close();
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            mOpenFiles.clear();
+        }
+    }
+
     public boolean renameWithoutExtension(String path, String newName) {
         return PFiles.renameWithoutExtension(path(path), newName);
     }
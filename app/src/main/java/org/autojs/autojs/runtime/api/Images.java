@@ -21,7 +21,10 @@ import androidx.annotation.NonNull;
 import org.autojs.autojs.annotation.ScriptInterface;
 import org.autojs.autojs.annotation.ScriptVariable;
 import org.autojs.autojs.concurrent.VolatileDispose;
+import org.autojs.autojs.core.image.BatchTemplateMatching;
 import org.autojs.autojs.core.image.ColorFinder;
+import org.autojs.autojs.core.image.ImageBufferPool;
+import org.autojs.autojs.core.image.ImagePyramid;
 import org.autojs.autojs.core.image.ImageWrapper;
 import org.autojs.autojs.core.image.TemplateMatching;
 import org.autojs.autojs.core.image.capture.ScreenCaptureRequester;
@@ -44,6 +47,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -63,10 +67,14 @@ public class Images {
     private ImageWrapper mPreCaptureImage;
     private final ScreenMetrics mScreenMetrics;
     private volatile boolean mOpenCvInitialized = false;
+    private volatile boolean mMatCapture = false;
 
     @ScriptVariable
     public final ColorFinder colorFinder;
 
+    @ScriptVariable
+    public final ImageBufferPool bufferPool = ImageBufferPool.INSTANCE;
+
     public Images(Context context, ScriptRuntime scriptRuntime, ScreenCaptureRequester screenCaptureRequester) {
         mScriptRuntime = scriptRuntime;
         mScreenCaptureRequester = screenCaptureRequester;
@@ -105,17 +113,38 @@ public class Images {
         if (mScreenCapturer == null) {
             throw new SecurityException(mContext.getString(R.string.error_no_screen_capture_permission));
         }
-        Image capture = mScreenCapturer.capture();
-        if (capture != mPreCapture || mPreCaptureImage == null) {
-            mPreCapture = capture;
-            if (mPreCaptureImage != null) {
-                mPreCaptureImage.recycle();
+        // The capturer is shared by all scripts, and closes the last image on the next capture of any of them,
+        // so the pixels are copied while holding it.
+        synchronized (mScreenCapturer) {
+            Image capture = mScreenCapturer.capture();
+            if (capture != mPreCapture || mPreCaptureImage == null) {
+                mPreCapture = capture;
+                if (mPreCaptureImage != null) {
+                    mPreCaptureImage.recycle();
+                }
+                mPreCaptureImage = mMatCapture
+                        ? ImageWrapper.ofImageAsMat(capture)
+                        : ImageWrapper.ofImage(capture);
             }
-            mPreCaptureImage = ImageWrapper.ofImage(capture);
         }
         return mPreCaptureImage;
     }
 
+    /**
+     * When enabled, captured images are copied once from the pixel buffer of the underlying {@link Image}
+     * into a pooled Mat, instead of into a padded bitmap which is then cropped and converted to a Mat on use.
+     */
+    public void setMatCapture(boolean enabled) {
+        if (enabled) {
+            initOpenCvIfNeeded();
+        }
+        mMatCapture = enabled;
+    }
+
+    public boolean isMatCapture() {
+        return mMatCapture;
+    }
+
     public boolean captureScreen(String path) {
         path = mScriptRuntime.files.path(path);
         ImageWrapper image = captureScreen();
@@ -192,7 +221,7 @@ public class Images {
     }
 
     public ImageWrapper clip(@NonNull ImageWrapper img, int x, int y, int w, int h) {
-        ImageWrapper imageWrapper = ImageWrapper.ofBitmap(Bitmap.createBitmap(img.getBitmap(), x, y, w, h));
+        ImageWrapper imageWrapper = ImageWrapper.ofPooledBitmap(ImageWrapper.copyOf(img.getBitmap(), x, y, w, h));
         img.shoot();
         return imageWrapper;
     }
@@ -294,22 +323,17 @@ public class Images {
         if (template == null) {
             throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.findImage", "template"));
         }
-        Mat src = image.getMat();
-        if (rect != null) {
-            src = new Mat(src, rect);
-        }
-        org.opencv.core.Point point = TemplateMatching.fastTemplateMatching(
-                src,
-                template.getMat(),
+        List<TemplateMatching.Match> matches = TemplateMatching.fastTemplateMatching(
+                image.getPyramid(rect),
+                template.getPyramid(null),
                 TemplateMatching.MATCHING_METHOD_DEFAULT,
                 weakThreshold,
                 threshold,
-                maxLevel
+                maxLevel,
+                1
         );
+        Point point = matches.isEmpty() ? null : matches.get(0).point;
 
-        if (src != image.getMat()) {
-            OpenCVHelper.release(src);
-        }
         image.shoot();
         template.shoot();
 
@@ -332,13 +356,9 @@ public class Images {
         if (template == null) {
             throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.matchTemplate", "template"));
         }
-        Mat src = image.getMat();
-        if (rect != null) {
-            src = new Mat(src, rect);
-        }
         List<TemplateMatching.Match> result = TemplateMatching.fastTemplateMatching(
-                src,
-                template.getMat(),
+                image.getPyramid(rect),
+                template.getPyramid(null),
                 Imgproc.TM_CCOEFF_NORMED,
                 weakThreshold,
                 threshold,
@@ -346,9 +366,6 @@ public class Images {
                 limit
         );
 
-        if (src != image.getMat()) {
-            OpenCVHelper.release(src);
-        }
         image.shoot();
         template.shoot();
 
@@ -364,6 +381,63 @@ public class Images {
         return result;
     }
 
+    public List<BatchTemplateMatching.Result> matchTemplates(ImageWrapper image, ImageWrapper[] templates, float weakThreshold, float threshold, Rect rect, int maxLevel, int limit) {
+        initOpenCvIfNeeded();
+        if (image == null) {
+            throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.matchTemplates", "image"));
+        }
+        if (templates == null) {
+            throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.matchTemplates", "templates"));
+        }
+        List<ImagePyramid> templatePyramids = new ArrayList<>(templates.length);
+        for (ImageWrapper template : templates) {
+            if (template == null) {
+                throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.matchTemplates", "template"));
+            }
+            templatePyramids.add(template.getPyramid(null));
+        }
+        List<BatchTemplateMatching.Result> results = BatchTemplateMatching.match(
+                image.getPyramid(rect),
+                templatePyramids,
+                Imgproc.TM_CCOEFF_NORMED,
+                weakThreshold,
+                threshold,
+                maxLevel,
+                limit
+        );
+
+        image.shoot();
+        for (ImageWrapper template : templates) {
+            template.shoot();
+        }
+
+        for (BatchTemplateMatching.Result result : results) {
+            for (TemplateMatching.Match match : result.matches) {
+                Point point = match.point;
+                if (rect != null) {
+                    point.x += rect.x;
+                    point.y += rect.y;
+                }
+                point.x = mScreenMetrics.scaleX((int) point.x);
+                point.y = mScreenMetrics.scaleX((int) point.y);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Build and cache pyramid levels of a template image in advance,
+     * so that subsequent findImage/matchTemplate calls with it skip resizing.
+     */
+    public ImageWrapper prepareTemplate(ImageWrapper template, int maxLevel) {
+        initOpenCvIfNeeded();
+        if (template == null) {
+            throw new NullPointerException(str(R.string.error_method_called_with_null_argument, "Images.prepareTemplate", "template"));
+        }
+        template.getPyramid(null).prepare(maxLevel == TemplateMatching.MAX_LEVEL_AUTO ? TemplateMatching.MAX_LEVEL : maxLevel);
+        return template;
+    }
+
     public Mat newMat() {
         return new Mat();
     }
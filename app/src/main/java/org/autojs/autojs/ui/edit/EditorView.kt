@@ -56,6 +56,7 @@ import org.autojs.autojs.ui.edit.completion.CodeCompletionBar.OnHintClickListene
 import org.autojs.autojs.ui.edit.debug.DebugBar
 import org.autojs.autojs.ui.edit.editor.CodeEditor
 import org.autojs.autojs.ui.edit.editor.CodeEditor.CheckedPatternSyntaxException
+import org.autojs.autojs.ui.edit.editor.TextViewUndoRedo
 import org.autojs.autojs.ui.edit.keyboard.FunctionsKeyboardHelper
 import org.autojs.autojs.ui.edit.keyboard.FunctionsKeyboardView
 import org.autojs.autojs.ui.edit.keyboard.FunctionsKeyboardView.ClickCallback
@@ -70,6 +71,7 @@ import org.autojs.autojs.ui.widget.EWebView
 import org.autojs.autojs.ui.widget.SimpleTextWatcher
 import org.autojs.autojs.util.DisplayUtils.pxToSp
 import org.autojs.autojs.util.DocsUtils.getUrl
+import org.autojs.autojs.util.MD5Utils.md5
 import org.autojs.autojs.util.Observers
 import org.autojs.autojs.util.ViewUtils.showSnack
 import org.autojs.autojs.util.ViewUtils.showToast
@@ -235,10 +237,18 @@ class EditorView : LinearLayout, OnHintClickListener, ClickCallback, ToolbarFrag
 
     @SuppressLint("CheckResult")
     private fun loadUri(uri: Uri?): Observable<String> {
-        return Observable.fromCallable { read(context.contentResolver.openInputStream(uri!!)!!) }
+        val historyFile = historyFile
+        return Observable.fromCallable {
+            // The undo history is read along with the text, as it may take megabytes to decompress.
+            read(context.contentResolver.openInputStream(uri!!)!!) to historyFile?.let { TextViewUndoRedo.readHistory(it) }
+        }
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
-            .doOnNext { text: String -> setInitialText(text) }
+            .doOnNext { (text, history) ->
+                setInitialText(text)
+                history?.let { editor.restoreHistory(it) }
+            }
+            .map { it.first }
     }
 
     private fun setInitialText(text: String) {
@@ -682,6 +692,7 @@ class EditorView : LinearLayout, OnHintClickListener, ClickCallback, ToolbarFrag
     }
 
     fun destroy() {
+        historyFile?.let { editor.saveHistory(it) }
         editor.destroy()
         mAutoCompletion?.shutdown()
     }
@@ -696,12 +707,19 @@ class EditorView : LinearLayout, OnHintClickListener, ClickCallback, ToolbarFrag
         }.observeOn(Schedulers.io())
     }
 
+    /**
+     * File where the undo history of the opened file is kept between sessions, or null if it is not a file.
+     */
+    private val historyFile: File?
+        get() = uri?.path?.let { File(context.cacheDir, "$HISTORY_DIR/${md5(it)}") }
+
     fun cleanBeforeExit() {
         mTmpSavedFileForRunning?.deleteOnExit()
     }
 
     companion object {
         private val TAG = EditorView::class.java.simpleName
+        private const val HISTORY_DIR = "editor-history"
         const val EXTRA_PATH = "path"
         const val EXTRA_NAME = "name"
         const val EXTRA_CONTENT = "content"
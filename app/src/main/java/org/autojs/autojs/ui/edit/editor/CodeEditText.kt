@@ -39,7 +39,6 @@ import android.widget.TextViewHelper
 import androidx.appcompat.widget.AppCompatEditText
 import org.autojs.autojs.ui.edit.editor.CodeEditor.BreakpointChangeListener
 import org.autojs.autojs.ui.edit.editor.CodeEditor.CursorChangeCallback
-import org.autojs.autojs.ui.edit.editor.JavaScriptHighlighter.HighlightTokens
 import org.autojs.autojs.ui.edit.theme.Theme
 import org.autojs.autojs.ui.edit.theme.TokenMapping
 import org.autojs.autojs.util.StringUtils.indexOf
@@ -56,8 +55,7 @@ class CodeEditText : AppCompatEditText {
     // 文字范围
     private var mParentScrollView: HVScrollView? = null
 
-    @Volatile
-    private var mHighlightTokens: HighlightTokens? = null
+    private var mHighlighter: JavaScriptHighlighter? = null
 
     private var mTheme: Theme = Theme.getDefault(context)
     private val mLineHighlightPaint = Paint().apply { style = Paint.Style.FILL }
@@ -172,13 +170,15 @@ class CodeEditText : AppCompatEditText {
         if (line < 0) {
             return
         }
-        val textLength = mHighlightTokens?.text?.length ?: 0
+        val text = text ?: return
+        val textLength = text.length
+        val highlighter = mHighlighter
+        highlighter?.highlightUntilLine(mLastLineForDraw.coerceAtMost(lineCount - 1))
         val scrollX = (mParentScrollView!!.scrollX + scrollX - paddingLeft).coerceAtLeast(0)
         while (line <= mLastLineForDraw && line < lineCount) {
             val lineBottom = layout.getLineTop(line + 1)
             val lineTop = layout.getLineTop(line)
             val lineBaseline = lineBottom - layout.getLineDescent(line)
-            val highlightTokens = mHighlightTokens
 
             // drawLineNumber
             val lineNumberText = (line + 1).toString()
@@ -188,7 +188,8 @@ class CodeEditText : AppCompatEditText {
                 canvas.drawRect(0f, lineTop.toFloat(), (paddingLeft - 10).toFloat(), lineBottom.toFloat(), paint.apply { color = mTheme.breakpointColor })
             }
             canvas.drawText(lineNumberText, 0, lineNumberText.length, 10f, lineBaseline.toFloat(), paint.apply { color = mTheme.lineNumberColor })
-            if (highlightTokens == null) {
+            val spans = highlighter?.getLineSpans(line)
+            if (spans == null || spans.isEmpty()) {
                 line++
                 continue
             }
@@ -198,26 +199,28 @@ class CodeEditText : AppCompatEditText {
             if (lineStart >= textLength) {
                 return
             }
-            val lineEnd = layout.getLineVisibleEnd(line).coerceAtMost(highlightTokens.colors.size)
+            val lineEnd = layout.getLineVisibleEnd(line).coerceAtMost(textLength)
             val visibleCharStart = getVisibleCharIndex(paint, scrollX, lineStart, lineEnd)
             val visibleCharEnd = getVisibleCharIndex(paint, scrollX + mParentScrollView!!.width, lineStart, lineEnd) + 1
-            var previousColorPos = visibleCharStart.coerceAtMost(highlightTokens.colors.size - 1)
+            var previousColorPos = visibleCharStart.coerceAtMost(textLength - 1)
+            var spanIndex = JavaScriptHighlighter.findSpan(spans, previousColorPos - lineStart, 0)
             var previousColor = when (previousColorPos) {
                 mUnmatchedBracket -> mTheme.getColorForToken(Token.ERROR)
                 mMatchingBrackets[0], mMatchingBrackets[1] -> mTheme.getColorForToken(TokenMapping.TOKEN_MATCHED_BRACKET)
-                else -> highlightTokens.colors[previousColorPos]
+                else -> spans[spanIndex + 1]
             }
             var i = previousColorPos
             while (i < visibleCharEnd) {
+                spanIndex = JavaScriptHighlighter.findSpan(spans, i - lineStart, spanIndex)
                 val color = when (i) {
                     mUnmatchedBracket -> mTheme.getColorForToken(Token.ERROR)
                     mMatchingBrackets[0], mMatchingBrackets[1] -> mTheme.getColorForToken(TokenMapping.TOKEN_MATCHED_BRACKET)
-                    else -> highlightTokens.colors[i]
+                    else -> spans[spanIndex + 1]
                 }
                 if (previousColor != color) {
                     paint.color = previousColor
                     val offsetX = paint.measureText(text, lineStart, previousColorPos)
-                    canvas.drawText(text!!, previousColorPos, i, paddingLeft + offsetX, lineBaseline.toFloat(), paint)
+                    canvas.drawText(text, previousColorPos, i, paddingLeft + offsetX, lineBaseline.toFloat(), paint)
                     previousColor = color
                     previousColorPos = i
                 }
@@ -231,7 +234,7 @@ class CodeEditText : AppCompatEditText {
                 return
             }
             try {
-                canvas.drawText(text!!, previousColorPos, visibleCharEnd, paddingLeft + offsetX, lineBaseline.toFloat(), paint)
+                canvas.drawText(text, previousColorPos, visibleCharEnd, paddingLeft + offsetX, lineBaseline.toFloat(), paint)
             } catch (ex: IndexOutOfBoundsException) {
                 Log.e(TAG, "IndexOutOfBounds: previousColorPos = $previousColorPos, visibleCharEnd = $visibleCharEnd, textLength = $textLength")
                 ex.printStackTrace()
@@ -343,12 +346,9 @@ class CodeEditText : AppCompatEditText {
 
     fun removeCursorChangeCallback(callback: CursorChangeCallback) = mCursorChangeCallbacks!!.remove(callback)
 
-    fun updateHighlightTokens(highlightTokens: HighlightTokens) {
-        if (mHighlightTokens != null && mHighlightTokens!!.id >= highlightTokens.id) {
-            return
-        }
-        mHighlightTokens = highlightTokens
-        postInvalidate()
+    fun setHighlighter(highlighter: JavaScriptHighlighter?) {
+        mHighlighter = highlighter
+        invalidate()
     }
 
     override fun setSelection(index: Int) {
@@ -10,6 +10,7 @@ import android.view.ScaleGestureDetector
 import android.view.ScaleGestureDetector.SimpleOnScaleGestureListener
 import com.afollestad.materialdialogs.MaterialDialog
 import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
 import org.autojs.autojs.pref.Pref.getEditorTextSize
 import org.autojs.autojs.pref.Pref.getString
 import org.autojs.autojs.pref.Pref.setEditorTextSize
@@ -23,6 +24,7 @@ import org.autojs.autojs.util.ViewUtils.showSnack
 import org.autojs.autojs.util.ViewUtils.showToast
 import org.autojs.autojs6.R
 import org.autojs.autojs6.databinding.CodeEditorBinding
+import java.io.File
 import java.util.regex.Matcher
 import java.util.regex.Pattern
 import java.util.regex.PatternSyntaxException
@@ -260,10 +262,6 @@ class CodeEditor : HVScrollView {
         mTheme = theme
         setBackgroundColor(mTheme!!.backgroundColor)
         mJavaScriptHighlighter.setTheme(theme)
-        val text = codeEditText.text
-        if (text != null) {
-            mJavaScriptHighlighter.updateTokens(text.toString())
-        }
         codeEditText.setTheme(mTheme!!)
         invalidate()
     }
@@ -466,6 +464,21 @@ class CodeEditor : HVScrollView {
         mTextViewRedoUndo.markTextAsUnchanged()
     }
 
+    fun restoreHistory(snapshot: TextViewUndoRedo.HistorySnapshot): Boolean {
+        return mTextViewRedoUndo.restoreHistory(snapshot)
+    }
+
+    @SuppressLint("CheckResult")
+    fun saveHistory(file: File) {
+        val snapshot = mTextViewRedoUndo.snapshotHistory()
+        Observable.fromCallable {
+            snapshot.write(file)
+            file.parentFile?.let { TextViewUndoRedo.trimHistoryFiles(it) }
+        }
+            .subscribeOn(Schedulers.io())
+            .subscribe({}, { it.printStackTrace() })
+    }
+
     fun setDebuggingLine(line: Int) {
         codeEditText.debuggingLine = line
     }
@@ -2,9 +2,11 @@ package org.autojs.autojs.ui.edit.editor;
 
 
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.autojs.autojs.pio.UncheckedIOException;
 import org.autojs.autojs.rhino.TokenStream;
@@ -13,117 +15,366 @@ import org.autojs.autojs.ui.widget.SimpleTextWatcher;
 import org.mozilla.javascript.Token;
 
 import java.io.IOException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class JavaScriptHighlighter implements SimpleTextWatcher.AfterTextChangedListener {
+/**
+ * Incremental syntax highlighter of {@link CodeEditText}.
+ * <p>
+ * Colors are kept per line as run-length spans, together with the lexer state at the end of the line,
+ * which is either inside a block comment, inside a string continued by a backslash, or neither.
+ * An edit only invalidates the lines it touches. They are lexed again from the end state of the previous line,
+ * going on with the following lines until an end state is the same as before the edit.
+ * </p>
+ * <p>
+ * Lexing happens on the main thread: lines are lexed when they are about to be drawn, so the visible range comes first,
+ * and the rest of the document is lexed afterwards in short slices.
+ * </p>
+ */
+public class JavaScriptHighlighter implements SimpleTextWatcher.BeforeTextChangedListener, SimpleTextWatcher.OnTextChangedListener {
 
-    public static class HighlightTokens {
+    private static final int STATE_UNKNOWN = -1;
+    private static final int STATE_NORMAL = 0;
+    private static final int STATE_COMMENT = 1;
+    // Any other state is the quote of a string continued on the next line.
 
-        public final int[] colors;
-        private final String mText;
-        private int mCount;
-        private final int mId;
+    private static final long SLICE_NANOS = 4_000_000L;
 
-        public HighlightTokens(String text, int id) {
-            colors = new int[text.length()];
-            mText = text;
-            mId = id;
-        }
+    private static final int[] EMPTY_SPANS = new int[0];
 
-        public int getId() {
-            return mId;
-        }
+    private static class Line {
 
-        public void addToken(int tokenStart, int tokenEnd, int color) {
-            if (mCount < tokenStart) {
-                int c = mCount > 0 ? colors[mCount - 1] : color;
-                for (int i = mCount; i < tokenStart; i++) {
-                    colors[i] = c;
-                }
-            }
-            for (int i = tokenStart; i < tokenEnd; i++) {
-                colors[i] = color;
-            }
-            mCount = tokenEnd;
-        }
+        int length;
+        int endState = STATE_UNKNOWN;
+        boolean dirty = true;
 
-        @NonNull
-        @Override
-        public String toString() {
-            return super.toString() + "{count = " + mCount + ", length = " + mText.length() + "}";
-        }
+        // Pairs of (end offset in the line, color), where the last span covers the rest of the line.
+        // Spans of a dirty line may be stale, but are still good enough to draw while it is being lexed again.
+        int[] spans;
 
-        public int getCharCount() {
-            return mCount;
+        Line(int length) {
+            this.length = length;
         }
 
-        public String getText() {
-            return mText;
-        }
     }
 
     private Theme mTheme;
     private final CodeEditText mCodeEditText;
-    private final ThreadPoolExecutor mExecutorService = new ThreadPoolExecutor(3, 6,
-            2L, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
-    private final AtomicInteger mRunningHighlighterId = new AtomicInteger();
     private final TextWatcher mTextWatcher;
+    private final List<Line> mLines = new ArrayList<>();
+    private int mTextLength;
+    private int mFirstDirtyLine;
+
+    private int mEditFirstLine;
+    private int mEditLastLine;
+    private int mEditLineStart;
+
+    private int[] mSpanBuffer = new int[64];
+    private int mSpanCount;
+
+    private final Runnable mHighlightRemaining = this::highlightRemaining;
+    private boolean mHighlightRemainingPosted;
 
     public JavaScriptHighlighter(Theme theme, CodeEditText codeEditText) {
-        mExecutorService.allowCoreThreadTimeOut(true);
         mTheme = theme;
         mCodeEditText = codeEditText;
-        mTextWatcher = new SimpleTextWatcher(this);
+        mTextWatcher = new SimpleTextWatcher(this, this, null);
+        resetLines(codeEditText.getText() == null ? "" : codeEditText.getText());
         codeEditText.addTextChangedListener(mTextWatcher);
-    }
-
-    @Override
-    public void afterTextChanged(Editable s) {
-        updateTokens(s.toString());
+        codeEditText.setHighlighter(this);
     }
 
     public void setTheme(Theme theme) {
         mTheme = theme;
+        for (Line line : mLines) {
+            line.dirty = true;
+        }
+        mFirstDirtyLine = 0;
     }
 
-    public void updateTokens(String sourceString) {
-        if (mTheme == null) {
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        if (s.length() != mTextLength) {
+            mEditFirstLine = -1;
             return;
         }
-        final int id = mRunningHighlighterId.incrementAndGet();
-        if (mExecutorService.isShutdown() || mExecutorService.isTerminated() || mExecutorService.isTerminating()) {
+        int line = 0;
+        int lineStart = 0;
+        int last = mLines.size() - 1;
+        while (line < last && lineStart + mLines.get(line).length < start) {
+            lineStart += mLines.get(line++).length + 1;
+        }
+        mEditFirstLine = line;
+        mEditLineStart = lineStart;
+        int end = start + count;
+        while (line < last && lineStart + mLines.get(line).length < end) {
+            lineStart += mLines.get(line++).length + 1;
+        }
+        mEditLastLine = line;
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        if (mEditFirstLine < 0) {
+            resetLines(s);
             return;
         }
-        mExecutorService.execute(() -> {
-            try {
-                updateTokens(sourceString, id);
-            } catch (IOException neverHappen) {
-                throw new UncheckedIOException(neverHappen);
+        // Text after the edit is unchanged up to the end of its line,
+        // so the edited lines are those from the start of the first one to the end of the inserted text.
+        List<Line> lines = new ArrayList<>();
+        int insertedEnd = start + count;
+        int lineStart = mEditLineStart;
+        while (true) {
+            int lineEnd = TextUtils.indexOf(s, '\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = s.length();
             }
-        });
+            lines.add(new Line(lineEnd - lineStart));
+            if (lineEnd >= insertedEnd) {
+                break;
+            }
+            lineStart = lineEnd + 1;
+        }
+        // Keep the previous end state of the edited range, so that lexing stops right after it when it is the same.
+        lines.get(lines.size() - 1).endState = mLines.get(mEditLastLine).endState;
+        mLines.subList(mEditFirstLine, mEditLastLine + 1).clear();
+        mLines.addAll(mEditFirstLine, lines);
+        mTextLength = s.length();
+        mFirstDirtyLine = Math.min(mFirstDirtyLine, mEditFirstLine);
     }
 
-    private void updateTokens(String sourceString, int id) throws IOException {
-        TokenStream ts = new TokenStream(null, sourceString, 0);
-        HighlightTokens highlightTokens = new HighlightTokens(sourceString, id);
-        int token;
-        int color = mTheme.getColorForToken(Token.NAME);
-        while ((token = ts.getToken()) != Token.EOF) {
-            color = mTheme.getColorForToken(token);
-            highlightTokens.addToken(ts.getTokenBeg(), ts.getTokenEnd(), color);
+    /**
+     * Lex dirty lines up to the given line, so that it and all lines before are highlighted.
+     * Remaining dirty lines after it will be lexed later on the main thread.
+     */
+    public void highlightUntilLine(int line) {
+        highlight(line, System.nanoTime());
+        if (mTheme != null && mFirstDirtyLine < mLines.size() && !mHighlightRemainingPosted) {
+            mHighlightRemainingPosted = true;
+            mCodeEditText.post(mHighlightRemaining);
         }
-        if (highlightTokens.getCharCount() < sourceString.length()) {
-            highlightTokens.addToken(highlightTokens.getCharCount(), sourceString.length(), color);
+    }
+
+    /**
+     * @return spans of the line as pairs of (end offset in the line, color), or null if the line has not been highlighted
+     */
+    @Nullable
+    public int[] getLineSpans(int line) {
+        if (mTheme == null || line < 0 || line >= mLines.size()) {
+            return null;
         }
-        mCodeEditText.updateHighlightTokens(highlightTokens);
+        return mLines.get(line).spans;
+    }
+
+    /**
+     * @return index of the span covering the offset in the line, searching forward from the span at the given index
+     */
+    public static int findSpan(int[] spans, int offset, int from) {
+        int i = from;
+        while (i + 2 < spans.length && spans[i] <= offset) {
+            i += 2;
+        }
+        return i;
     }
 
     public void shutdown() {
         mCodeEditText.removeTextChangedListener(mTextWatcher);
-        mExecutorService.shutdownNow();
+        mCodeEditText.removeCallbacks(mHighlightRemaining);
+        mCodeEditText.setHighlighter(null);
+    }
+
+    private void highlightRemaining() {
+        mHighlightRemainingPosted = false;
+        highlight(-1, System.nanoTime() + SLICE_NANOS);
+        if (mTheme != null && mFirstDirtyLine < mLines.size()) {
+            mHighlightRemainingPosted = true;
+            mCodeEditText.post(mHighlightRemaining);
+        }
+    }
+
+    private void highlight(int untilLine, long deadline) {
+        Editable text = mCodeEditText.getText();
+        if (mTheme == null || text == null) {
+            return;
+        }
+        if (text.length() != mTextLength) {
+            resetLines(text);
+        }
+        try {
+            while (mFirstDirtyLine < mLines.size() && (mFirstDirtyLine <= untilLine || System.nanoTime() - deadline < 0)) {
+                lex(text, untilLine, deadline);
+            }
+        } catch (IOException neverHappen) {
+            throw new UncheckedIOException(neverHappen);
+        }
+    }
+
+    /**
+     * Lex from the first dirty line, until the end state of a line converges or lexing runs out of time.
+     */
+    private void lex(CharSequence text, int untilLine, long deadline) throws IOException {
+        int line = mFirstDirtyLine;
+        int lineStart = 0;
+        for (int i = 0; i < line; i++) {
+            lineStart += mLines.get(i).length + 1;
+        }
+        int lineEnd = lineStart + mLines.get(line).length;
+        int startState = line == 0 ? STATE_NORMAL : mLines.get(line - 1).endState;
+        // Resume a comment or a string from the previous line by prepending its opening,
+        // which is taken as part of the previous line.
+        String prefix = startState == STATE_COMMENT ? "/*" : startState > STATE_COMMENT ? String.valueOf((char) startState) : "";
+        int shift = lineStart - prefix.length();
+        TokenStream ts = new TokenStream(new SourceReader(text, lineStart, prefix), null, 0);
+        mSpanCount = 0;
+        int token;
+        while ((token = ts.getToken()) != Token.EOF) {
+            if (token == Token.EOL) {
+                continue;
+            }
+            int beg = ts.getTokenBeg() + shift;
+            int end = ts.getTokenEnd() + shift;
+            while (beg > lineEnd) {
+                if (finishLine(line, STATE_NORMAL, untilLine, deadline)) {
+                    return;
+                }
+                lineStart = lineEnd + 1;
+                lineEnd = lineStart + mLines.get(++line).length;
+            }
+            int color = mTheme.getColorForToken(token);
+            int spanStart = beg - lineStart;
+            if (end > lineEnd) {
+                int state = getStateAcrossLines(token, ts.getTokenBeg() < prefix.length() ? startState : text.charAt(beg));
+                do {
+                    addSpan(spanStart, lineEnd - lineStart, color);
+                    spanStart = 0;
+                    if (finishLine(line, state, untilLine, deadline)) {
+                        return;
+                    }
+                    lineStart = lineEnd + 1;
+                    lineEnd = lineStart + mLines.get(++line).length;
+                } while (end > lineEnd);
+            }
+            addSpan(spanStart, end - lineStart, color);
+        }
+        while (!finishLine(line, STATE_NORMAL, untilLine, deadline)) {
+            line++;
+        }
+    }
+
+    private static int getStateAcrossLines(int token, int quote) {
+        if (token == Token.COMMENT) {
+            return STATE_COMMENT;
+        }
+        return quote == '"' || quote == '\'' || quote == '`' ? quote : STATE_NORMAL;
+    }
+
+    /**
+     * Store the spans and the end state of the line.
+     *
+     * @return true if lexing should stop here, as the following lines are still valid or the time is up
+     */
+    private boolean finishLine(int line, int endState, int untilLine, long deadline) {
+        Line l = mLines.get(line);
+        int previousEndState = l.endState;
+        l.spans = mSpanCount == 0 ? EMPTY_SPANS : Arrays.copyOf(mSpanBuffer, mSpanCount);
+        l.endState = endState;
+        l.dirty = false;
+        mSpanCount = 0;
+        int next = line + 1;
+        if (next >= mLines.size()) {
+            mFirstDirtyLine = mLines.size();
+            return true;
+        }
+        Line nextLine = mLines.get(next);
+        if (endState != previousEndState) {
+            nextLine.dirty = true;
+        }
+        if (!nextLine.dirty) {
+            mFirstDirtyLine = findDirtyLine(next + 1);
+            return true;
+        }
+        mFirstDirtyLine = next;
+        return next > untilLine && System.nanoTime() - deadline >= 0;
+    }
+
+    private int findDirtyLine(int from) {
+        int size = mLines.size();
+        for (int i = from; i < size; i++) {
+            if (mLines.get(i).dirty) {
+                return i;
+            }
+        }
+        return size;
+    }
+
+    private void addSpan(int start, int end, int color) {
+        // Characters between tokens take the color of the previous token, as in a whole document pass.
+        if (mSpanCount > 0 && mSpanBuffer[mSpanCount - 2] < start) {
+            mSpanBuffer[mSpanCount - 2] = start;
+        }
+        if (mSpanCount > 0 && mSpanBuffer[mSpanCount - 1] == color) {
+            mSpanBuffer[mSpanCount - 2] = end;
+            return;
+        }
+        if (mSpanCount == mSpanBuffer.length) {
+            mSpanBuffer = Arrays.copyOf(mSpanBuffer, mSpanCount * 2);
+        }
+        mSpanBuffer[mSpanCount++] = end;
+        mSpanBuffer[mSpanCount++] = color;
+    }
+
+    private void resetLines(CharSequence text) {
+        mLines.clear();
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = TextUtils.indexOf(text, '\n', lineStart)) >= 0) {
+            mLines.add(new Line(lineEnd - lineStart));
+            lineStart = lineEnd + 1;
+        }
+        mLines.add(new Line(text.length() - lineStart));
+        mTextLength = text.length();
+        mFirstDirtyLine = 0;
+    }
+
+    /**
+     * Reader of the text from an offset, preceded by a prefix which restores the lexer state at the offset.
+     */
+    private static class SourceReader extends Reader {
+
+        private final CharSequence mText;
+        private String mPrefix;
+        private int mPosition;
+
+        SourceReader(CharSequence text, int start, String prefix) {
+            mText = text;
+            mPosition = start;
+            mPrefix = prefix;
+        }
+
+        @Override
+        public int read(@NonNull char[] buffer, int offset, int length) {
+            if (!mPrefix.isEmpty()) {
+                int n = Math.min(length, mPrefix.length());
+                mPrefix.getChars(0, n, buffer, offset);
+                mPrefix = mPrefix.substring(n);
+                return n;
+            }
+            if (mPosition >= mText.length()) {
+                return -1;
+            }
+            int n = Math.min(length, mText.length() - mPosition);
+            TextUtils.getChars(mText, mPosition, mPosition + n, buffer, offset);
+            mPosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            /* Empty body. */
+        }
+
     }
 
 }
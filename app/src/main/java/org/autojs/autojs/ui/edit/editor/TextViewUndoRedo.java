@@ -4,11 +4,22 @@ package org.autojs.autojs.ui.edit.editor;
  * THIS CLASS IS PROVIDED TO THE PUBLIC DOMAIN FOR FREE WITHOUT ANY
  * RESTRICTIONS OR ANY WARRANTY.
  */
-import java.util.LinkedList;
-
-import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
-import android.os.Handler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.Selection;
 import android.text.TextWatcher;
@@ -17,9 +28,31 @@ import android.widget.TextView;
 
 /**
  * A generic undo/redo implementation for TextViews.
+ * <p>
+ * Each edit is kept as a delta, which is the replaced and the inserted text without the part they have in common,
+ * and consecutive keystrokes are merged into one edit per word.
+ * The history is bounded by its size in bytes, and can be saved to a file to be restored when the text is opened again.
+ * </p>
  */
 public class TextViewUndoRedo {
 
+    /**
+     * Default maximum size of the history in bytes.
+     */
+    public static final long DEFAULT_MAX_HISTORY_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Maximum interval between keystrokes to be merged into one edit.
+     */
+    private static final long MERGE_INTERVAL_MILLIS = 2000;
+
+    private static final int HISTORY_FILE_MAGIC = 0x55524831;
+
+    /**
+     * Maximum number of history files kept by {@link #trimHistoryFiles(File)}.
+     */
+    private static final int MAX_HISTORY_FILES = 100;
+
     /**
      * Is undo/redo being performed? This member signals if an undo/redo
      * operation is currently being performed. Changes in the text during
@@ -44,11 +77,10 @@ public class TextViewUndoRedo {
 
     private boolean mEnabled = true;
 
-    private int mInitialHistoryStackSize;
-
-    private final Handler mHandler = new Handler();
-    private int mTextChangeId = 0;
-    private final boolean mTextChanging = false;
+    /**
+     * Id of the state of the text when it was last marked as unchanged.
+     */
+    private long mUnchangedStateId;
 
     // =================================================================== //
 
@@ -79,13 +111,13 @@ public class TextViewUndoRedo {
         mIsUndoOrRedo = false;
     }
 
-    public boolean isTextChanged(){
-        return mInitialHistoryStackSize != mEditHistory.size();
+    public boolean isTextChanged() {
+        return mEditHistory.getStateId() != mUnchangedStateId;
     }
 
-
     public void markTextAsUnchanged() {
-        mInitialHistoryStackSize = mEditHistory.size();
+        mUnchangedStateId = mEditHistory.getStateId();
+        mEditHistory.mmMergeable = false;
     }
 
     // =================================================================== //
@@ -102,7 +134,17 @@ public class TextViewUndoRedo {
      * only limited by the device memory.
      */
     public void setMaxHistorySize(int maxHistorySize) {
-        mEditHistory.setMaxHistorySize(maxHistorySize);
+        mEditHistory.mmMaxHistorySize = maxHistorySize;
+        mEditHistory.trimHistory();
+    }
+
+    /**
+     * Set the maximum history size in bytes, where the oldest edits are dropped first.
+     * The last edit is always kept, however large it is.
+     */
+    public void setMaxHistoryBytes(long maxHistoryBytes) {
+        mEditHistory.mmMaxHistoryBytes = maxHistoryBytes;
+        mEditHistory.trimHistory();
     }
 
     /**
@@ -110,7 +152,7 @@ public class TextViewUndoRedo {
      */
     public void clearHistory() {
         mEditHistory.clear();
-        mInitialHistoryStackSize = 0;
+        mUnchangedStateId = mEditHistory.getStateId();
     }
 
     /**
@@ -131,7 +173,7 @@ public class TextViewUndoRedo {
 
         Editable text = mTextView.getEditableText();
         int start = edit.mmStart;
-        int end = start + (edit.mmAfter != null ? edit.mmAfter.length() : 0);
+        int end = start + edit.mmAfter.length();
 
         mIsUndoOrRedo = true;
         text.replace(start, end, edit.mmBefore);
@@ -143,8 +185,7 @@ public class TextViewUndoRedo {
             text.removeSpan(o);
         }
 
-        Selection.setSelection(text, edit.mmBefore == null ? start
-                : (start + edit.mmBefore.length()));
+        Selection.setSelection(text, start + edit.mmBefore.length());
     }
 
     /**
@@ -165,7 +206,7 @@ public class TextViewUndoRedo {
 
         Editable text = mTextView.getEditableText();
         int start = edit.mmStart;
-        int end = start + (edit.mmBefore != null ? edit.mmBefore.length() : 0);
+        int end = start + edit.mmBefore.length();
 
         mIsUndoOrRedo = true;
         text.replace(start, end, edit.mmAfter);
@@ -177,95 +218,156 @@ public class TextViewUndoRedo {
             text.removeSpan(o);
         }
 
-        Selection.setSelection(text, edit.mmAfter == null ? start
-                : (start + edit.mmAfter.length()));
+        Selection.setSelection(text, start + edit.mmAfter.length());
     }
 
     /**
-     * Store preferences.
+     * Take a snapshot of the history with the text it applies to, which can be written to a file on another thread.
      */
-    public void storePersistentState(Editor editor, String prefix) {
-        // Store hash code of text in the editor so that we can check if the
-        // editor contents has changed.
-        editor.putString(prefix + ".hash",
-                String.valueOf(mTextView.getText().toString().hashCode()));
-        editor.putInt(prefix + ".maxSize", mEditHistory.mmMaxHistorySize);
-        editor.putInt(prefix + ".position", mEditHistory.mmPosition);
-        editor.putInt(prefix + ".size", mEditHistory.mmHistory.size());
-
-        int i = 0;
-        for (EditItem ei : mEditHistory.mmHistory) {
-            String pre = prefix + "." + i;
-
-            editor.putInt(pre + ".start", ei.mmStart);
-            editor.putString(pre + ".before", ei.mmBefore.toString());
-            editor.putString(pre + ".after", ei.mmAfter.toString());
-
-            i++;
-        }
+    public HistorySnapshot snapshotHistory() {
+        String text = mTextView.getText().toString();
+        return new HistorySnapshot(text.length(), text.hashCode(), mEditHistory.mmPosition, new ArrayList<>(mEditHistory.mmHistory));
     }
 
     /**
-     * Restore preferences.
+     * Read a history from a file written by {@link HistorySnapshot#write(File)}, which may be done on any thread.
      *
-     * @param prefix The preference key prefix used when state was stored.
-     * @return did restore succeed? If this is false, the undo history will be
-     * empty.
+     * @return null if there is no such file or it cannot be read
      */
-    public boolean restorePersistentState(SharedPreferences sp, String prefix)
-            throws IllegalStateException {
-
-        boolean ok = doRestorePersistentState(sp, prefix);
-        if (!ok) {
-            mEditHistory.clear();
+    public static HistorySnapshot readHistory(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != HISTORY_FILE_MAGIC) {
+                return null;
+            }
+            int textLength = in.readInt();
+            int textHash = in.readInt();
+            int position = in.readInt();
+            int count = in.readInt();
+            if (position < 0 || position > count) {
+                return null;
+            }
+            List<EditItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int start = in.readInt();
+                // Ids are given when the history is restored.
+                items.add(new EditItem(start, readString(in), readString(in), 0));
+            }
+            return new HistorySnapshot(textLength, textHash, position, items);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
-
-        return ok;
     }
 
-    private boolean doRestorePersistentState(SharedPreferences sp, String prefix) {
-
-        String hash = sp.getString(prefix + ".hash", null);
-        if (hash == null) {
-            // No state to be restored.
-            return true;
+    /**
+     * Delete history files of the directory except the most recently written ones,
+     * as a file is kept for every text ever edited.
+     */
+    public static void trimHistoryFiles(File dir) {
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null || files.length <= MAX_HISTORY_FILES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_HISTORY_FILES; i < files.length; i++) {
+            // noinspection ResultOfMethodCallIgnored
+            files[i].delete();
         }
+    }
 
-        if (Integer.parseInt(hash) != mTextView.getText().toString().hashCode()) {
+    /**
+     * Restore the history read by {@link #readHistory(File)}, and mark the current text as unchanged.
+     *
+     * @return did restore succeed? It fails if the history was taken on a different text,
+     * in which case the history is left as it is.
+     */
+    public boolean restoreHistory(HistorySnapshot snapshot) {
+        String text = mTextView.getText().toString();
+        if (snapshot.mmTextLength != text.length() || snapshot.mmTextHash != text.hashCode()) {
             return false;
         }
-
         mEditHistory.clear();
-        mEditHistory.mmMaxHistorySize = sp.getInt(prefix + ".maxSize", -1);
-
-        int count = sp.getInt(prefix + ".size", -1);
-        if (count == -1) {
-            return false;
+        for (EditItem item : snapshot.mmItems) {
+            mEditHistory.append(new EditItem(item.mmStart, item.mmBefore, item.mmAfter, mEditHistory.nextId()));
         }
+        mEditHistory.mmPosition = snapshot.mmPosition;
+        mEditHistory.trimHistory();
+        markTextAsUnchanged();
+        return true;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
 
-        for (int i = 0; i < count; i++) {
-            String pre = prefix + "." + i;
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // =================================================================== //
+
+    /**
+     * History of a text at some moment, with the length and hash of the text to check it against when restored.
+     */
+    public static final class HistorySnapshot {
+
+        private final int mmTextLength;
+        private final int mmTextHash;
+        private final int mmPosition;
+        private final List<EditItem> mmItems;
+
+        private HistorySnapshot(int textLength, int textHash, int position, List<EditItem> items) {
+            mmTextLength = textLength;
+            mmTextHash = textHash;
+            mmPosition = position;
+            mmItems = items;
+        }
 
-            int start = sp.getInt(pre + ".start", -1);
-            String before = sp.getString(pre + ".before", null);
-            String after = sp.getString(pre + ".after", null);
+        public boolean isEmpty() {
+            return mmItems.isEmpty();
+        }
 
-            if (start == -1 || before == null || after == null) {
-                return false;
+        /**
+         * Write the history to the file, which is deleted instead if the history is empty.
+         */
+        public void write(File file) throws IOException {
+            if (mmItems.isEmpty()) {
+                // noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return;
+            }
+            File dir = file.getParentFile();
+            if (dir != null) {
+                // noinspection ResultOfMethodCallIgnored
+                dir.mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+                out.writeInt(HISTORY_FILE_MAGIC);
+                out.writeInt(mmTextLength);
+                out.writeInt(mmTextHash);
+                out.writeInt(mmPosition);
+                out.writeInt(mmItems.size());
+                for (EditItem item : mmItems) {
+                    out.writeInt(item.mmStart);
+                    writeString(out, item.mmBefore);
+                    writeString(out, item.mmAfter);
+                }
             }
-            mEditHistory.add(new EditItem(start, before, after));
         }
 
-        mEditHistory.mmPosition = sp.getInt(prefix + ".position", -1);
-        return mEditHistory.mmPosition != -1;
     }
 
-    // =================================================================== //
-
     /**
      * Keeps track of all the edit history of a text.
      */
-    private final class EditHistory {
+    private static final class EditHistory {
 
         /**
          * The position from which an EditItem will be retrieved when getNext()
@@ -279,10 +381,34 @@ public class TextViewUndoRedo {
          */
         private int mmMaxHistorySize = -1;
 
+        /**
+         * Maximum undo history size in bytes.
+         */
+        private long mmMaxHistoryBytes = DEFAULT_MAX_HISTORY_BYTES;
+
+        /**
+         * Size of all the edits in bytes.
+         */
+        private long mmBytes = 0;
+
         /**
          * The list of edits in chronological order.
          */
-        private final LinkedList<EditItem> mmHistory = new LinkedList<>();
+        private final List<EditItem> mmHistory = new ArrayList<>();
+
+        /**
+         * Id of the state before the first edit in the history.
+         */
+        private long mmBaseId = 0;
+
+        private long mmLastId = 0;
+
+        /**
+         * Can the next edit be merged into the last one? It can not after undo, redo or when the text is marked as unchanged.
+         */
+        private boolean mmMergeable = false;
+
+        private long mmLastAddTime;
 
         /**
          * Clear history.
@@ -290,52 +416,68 @@ public class TextViewUndoRedo {
         private void clear() {
             mmPosition = 0;
             mmHistory.clear();
+            mmBytes = 0;
+            mmBaseId = nextId();
+            mmMergeable = false;
+        }
+
+        private long nextId() {
+            return ++mmLastId;
+        }
+
+        /**
+         * Id of the current state of the text, which changes with every edit, undo and redo.
+         */
+        private long getStateId() {
+            return mmPosition == 0 ? mmBaseId : mmHistory.get(mmPosition - 1).mmId;
         }
 
         /**
          * Adds a new edit operation to the history at the current position. If
          * executed after a call to getPrevious() removes all the future history
          * (elements with positions >= current history position).
+         * The edit is merged into the last one if they are consecutive keystrokes of the same word.
          */
         private void add(EditItem item) {
             while (mmHistory.size() > mmPosition) {
-                mmHistory.removeLast();
+                mmBytes -= mmHistory.remove(mmHistory.size() - 1).getBytes();
             }
-            mmHistory.add(item);
-            mmPosition++;
-
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
+            long now = SystemClock.uptimeMillis();
+            EditItem merged = mmMergeable && mmPosition > 0 && now - mmLastAddTime < MERGE_INTERVAL_MILLIS
+                    ? mmHistory.get(mmPosition - 1).merge(item, nextId()) : null;
+            if (merged != null) {
+                mmBytes += merged.getBytes() - mmHistory.set(mmPosition - 1, merged).getBytes();
+            } else {
+                append(item);
             }
+            mmMergeable = true;
+            mmLastAddTime = now;
+            trimHistory();
         }
 
-        public int size(){
-            return mmHistory.size();
-        }
-
-        /**
-         * Set the maximum history size. If size is negative, then history size
-         * is only limited by the device memory.
-         */
-        private void setMaxHistorySize(int maxHistorySize) {
-            mmMaxHistorySize = maxHistorySize;
-            if (mmMaxHistorySize >= 0) {
-                trimHistory();
-            }
+        private void append(EditItem item) {
+            mmHistory.add(item);
+            mmBytes += item.getBytes();
+            mmPosition++;
         }
 
         /**
-         * Trim history when it exceeds max history size.
+         * Trim history when it exceeds max history size or bytes.
          */
         private void trimHistory() {
-            while (mmHistory.size() > mmMaxHistorySize) {
-                mmHistory.removeFirst();
-                mmPosition--;
+            int remove = 0;
+            long bytes = mmBytes;
+            int size = mmHistory.size();
+            while (size - remove > 1 && (mmMaxHistorySize >= 0 && size - remove > mmMaxHistorySize || bytes > mmMaxHistoryBytes)) {
+                bytes -= mmHistory.get(remove++).getBytes();
             }
-
-            if (mmPosition < 0) {
-                mmPosition = 0;
+            if (remove == 0) {
+                return;
             }
+            mmBaseId = mmHistory.get(remove - 1).mmId;
+            mmHistory.subList(0, remove).clear();
+            mmBytes = bytes;
+            mmPosition = Math.max(mmPosition - remove, 0);
         }
 
         /**
@@ -346,6 +488,7 @@ public class TextViewUndoRedo {
             if (mmPosition == 0) {
                 return null;
             }
+            mmMergeable = false;
             mmPosition--;
             return mmHistory.get(mmPosition);
         }
@@ -358,7 +501,7 @@ public class TextViewUndoRedo {
             if (mmPosition >= mmHistory.size()) {
                 return null;
             }
-
+            mmMergeable = false;
             EditItem item = mmHistory.get(mmPosition);
             mmPosition++;
             return item;
@@ -368,19 +511,75 @@ public class TextViewUndoRedo {
     /**
      * Represents the changes performed by a single edit operation.
      */
-    private final class EditItem {
+    private static final class EditItem {
         private final int mmStart;
-        private final CharSequence mmBefore;
-        private final CharSequence mmAfter;
+        private final String mmBefore;
+        private final String mmAfter;
+        private final long mmId;
 
         /**
          * Constructs EditItem of a modification that was applied at position
-         * start and replaced CharSequence before with CharSequence after.
+         * start and replaced String before with String after.
          */
-        public EditItem(int start, CharSequence before, CharSequence after) {
+        EditItem(int start, String before, String after, long id) {
             mmStart = start;
             mmBefore = before;
             mmAfter = after;
+            mmId = id;
+        }
+
+        /**
+         * Edit of the replaced and inserted text, without the prefix and suffix they have in common,
+         * which makes edits like replacing the whole text much smaller.
+         */
+        static EditItem of(int start, CharSequence before, CharSequence after, long id) {
+            int end = Math.min(before.length(), after.length());
+            int prefix = 0;
+            while (prefix < end && before.charAt(prefix) == after.charAt(prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < end - prefix && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+                suffix++;
+            }
+            return new EditItem(start + prefix,
+                    before.subSequence(prefix, before.length() - suffix).toString(),
+                    after.subSequence(prefix, after.length() - suffix).toString(), id);
+        }
+
+        long getBytes() {
+            // Chars of both strings and the overhead of the objects.
+            return 2L * (mmBefore.length() + mmAfter.length()) + 96;
+        }
+
+        /**
+         * Merge the next edit into this one if both are typing or both are deleting at the same place, within a word.
+         *
+         * @return the merged edit, or null if they can not be merged
+         */
+        EditItem merge(EditItem next, long id) {
+            if (mmBefore.isEmpty() && next.mmBefore.isEmpty() && !mmAfter.isEmpty() && !next.mmAfter.isEmpty()) {
+                if (next.mmStart != mmStart + mmAfter.length() || next.mmAfter.indexOf('\n') >= 0) {
+                    return null;
+                }
+                // A new word starts a new edit.
+                if (Character.isWhitespace(mmAfter.charAt(mmAfter.length() - 1)) && !Character.isWhitespace(next.mmAfter.charAt(0))) {
+                    return null;
+                }
+                return new EditItem(mmStart, "", mmAfter + next.mmAfter, id);
+            }
+            if (mmAfter.isEmpty() && next.mmAfter.isEmpty() && !mmBefore.isEmpty() && !next.mmBefore.isEmpty()) {
+                if (next.mmBefore.indexOf('\n') >= 0) {
+                    return null;
+                }
+                if (next.mmStart + next.mmBefore.length() == mmStart) {
+                    return new EditItem(next.mmStart, next.mmBefore + mmBefore, "", id);
+                }
+                if (next.mmStart == mmStart) {
+                    return new EditItem(mmStart, mmBefore + next.mmBefore, "", id);
+                }
+            }
+            return null;
         }
     }
 
@@ -394,17 +593,12 @@ public class TextViewUndoRedo {
          */
         private CharSequence mBeforeChange;
 
-        /**
-         * The text that was inserted by the change event.
-         */
-        private CharSequence mAfterChange;
-
         public void beforeTextChanged(CharSequence s, int start, int count,
                                       int after) {
             if (mIsUndoOrRedo || !mEnabled) {
                 return;
             }
-            mBeforeChange = s.subSequence(start, start + count);
+            mBeforeChange = s.subSequence(start, start + count).toString();
         }
 
         public void onTextChanged(CharSequence s, int start, int before,
@@ -412,20 +606,16 @@ public class TextViewUndoRedo {
             if (mIsUndoOrRedo || !mEnabled) {
                 return;
             }
-            mAfterChange = s.subSequence(start, start + count);
-            mTextChangeId++;
-            mEditHistory.add(new EditItem(start, mBeforeChange, mAfterChange));
-            int textChangeId = mTextChangeId;
-            //TODO 增加连续输入文字当成一次撤销的功能
+            EditItem item = EditItem.of(start, mBeforeChange, s.subSequence(start, start + count), mEditHistory.nextId());
+            mBeforeChange = null;
+            if (item.mmBefore.isEmpty() && item.mmAfter.isEmpty()) {
+                return;
+            }
+            mEditHistory.add(item);
         }
 
         public void afterTextChanged(Editable s) {
-            if (mIsUndoOrRedo || !mEnabled) {
-                return;
-            }
-            if (mEditHistory.size() < mInitialHistoryStackSize) {
-                mInitialHistoryStackSize = 0;
-            }
+            /* Empty body. */
         }
     }
 }
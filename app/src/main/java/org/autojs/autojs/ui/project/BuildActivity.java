@@ -320,12 +320,17 @@ public class BuildActivity extends BaseActivity implements ApkBuilder.ProgressCa
     }
 
     private ApkBuilder callApkBuilder(File tmpDir, File outApk, ApkBuilder.AppConfig appConfig) throws Exception {
-        InputStream templateApk = mTemplatePath.getText() != null
-                ? mTemplatePath.getText().toString().equals(getString(R.string.path_android_asset_template))
-                ? getAssets().open(TEMPLATE_APK_PATH)
-                : new java.io.FileInputStream(mTemplatePath.getText().toString())
-                : ApkBuilderPluginHelper.openTemplateApk(BuildActivity.this);
-        return new ApkBuilder(templateApk, outApk, tmpDir.getPath())
+        ApkBuilder apkBuilder;
+        if (mTemplatePath.getText() != null && !mTemplatePath.getText().toString().equals(getString(R.string.path_android_asset_template))) {
+            // Template from a file is extracted with random access (in parallel).
+            apkBuilder = new ApkBuilder(new File(mTemplatePath.getText().toString()), outApk, tmpDir.getPath());
+        } else {
+            InputStream templateApk = mTemplatePath.getText() != null
+                    ? getAssets().open(TEMPLATE_APK_PATH)
+                    : ApkBuilderPluginHelper.openTemplateApk(BuildActivity.this);
+            apkBuilder = new ApkBuilder(templateApk, outApk, tmpDir.getPath());
+        }
+        return apkBuilder
                 .setProgressCallback(BuildActivity.this)
                 .prepare()
                 .withConfig(appConfig)